@@ -0,0 +1,313 @@
+/*******************************************************************************
+ * Copyright (c) 2018, Xavier Miret Andres <xavier.mires@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package org.matcher;
+
+import static org.matcher.builder.BuilderUtils.aliasPlusColumn;
+import static org.matcher.builder.BuilderUtils.getColumns;
+import static org.matcher.builder.BuilderUtils.getTableName;
+import static org.matcher.builder.BuilderUtils.toAlias;
+import static org.matcher.expression.Expressions.COMMA;
+import static org.matcher.expression.Expressions.DISTINCT;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+
+import org.matcher.bean.InvokationCapturer;
+import org.matcher.builder.ClauseBuilder;
+import org.matcher.builder.ClauseBuilder.ClauseType;
+import org.matcher.builder.FromBuilder;
+import org.matcher.builder.TransparentBuilder;
+import org.matcher.expression.Expression;
+import org.matcher.expression.FetchJoinExpression;
+import org.matcher.expression.FromExpression;
+import org.matcher.expression.FunctionExpression;
+import org.matcher.option.MatcherOption;
+import org.matcher.parameter.ParameterBinding;
+import org.matcher.parameter.ParameterBindingImpl;
+
+/**
+ * A jpql query rendered from clause builders together with its parameter bindings.
+ * <p>
+ * Rendering doesn't require any {@link EntityManager}, so a bound query can be built once and executed later on.
+ */
+public class BoundQuery {
+
+    private final String text;
+    private final ParameterBinding bindings;
+    private final Set<Class<?>> referents;
+
+    public BoundQuery(String text, ParameterBinding bindings, Set<Class<?>> referents) {
+	this.text = text;
+	this.bindings = bindings;
+	this.referents = referents;
+    }
+
+    /**
+     * Renders a query where the {@code clauseBuilder} is either a where clause or any clause coming after it.
+     */
+    public static BoundQuery of(ClauseBuilder<?> selectBuilder, ClauseBuilder<?> clauseBuilder) {
+	return of(selectBuilder, whereClause(clauseBuilder), afterWhereClause(clauseBuilder));
+    }
+
+    /**
+     * Renders a query out of its select, where and after where (group by, having, order by) clauses.
+     */
+    public static BoundQuery of( //
+	    ClauseBuilder<?> selectBuilder, //
+	    ClauseBuilder<?> whereBuilder, //
+	    ClauseBuilder<?> afterWhereBuilder) {
+	return of(selectBuilder, whereBuilder, afterWhereBuilder, new ParameterBindingImpl());
+    }
+
+    /**
+     * Renders a query out of its select, where and after where clauses, binding its parameters in {@code bindings}.
+     */
+    public static BoundQuery of( //
+	    ClauseBuilder<?> selectBuilder, //
+	    ClauseBuilder<?> whereBuilder, //
+	    ClauseBuilder<?> afterWhereBuilder, //
+	    ParameterBinding bindings) {
+	return of(selectBuilder, whereBuilder, afterWhereBuilder, bindings, Collections.emptyList());
+    }
+
+    /**
+     * Renders a query out of its select, where and after where clauses, loading the {@code fetchJoins} associations
+     * together with their referents. The fetched entity types are part of the query referents.
+     */
+    public static BoundQuery of( //
+	    ClauseBuilder<?> selectBuilder, //
+	    ClauseBuilder<?> whereBuilder, //
+	    ClauseBuilder<?> afterWhereBuilder, //
+	    ParameterBinding bindings, //
+	    Collection<FetchJoinExpression> fetchJoins) {
+
+	// all builder expressions are already evaluated, any pending capture is a leftover
+	InvokationCapturer.closeImplicitScope();
+
+	selectBuilder.overwriteNullReferenceAndProperties(selectBuilder.getLeadingReferent(), null);
+	whereBuilder.overwriteNullReferenceAndProperties(selectBuilder.getLeadingReferent(), null);
+	afterWhereBuilder.overwriteNullReferenceAndProperties(selectBuilder.getLeadingReferent(), null);
+	for (FetchJoinExpression fetchJoin : fetchJoins) {
+	    fetchJoin.overwriteNullReferenceAndProperties(selectBuilder.getLeadingReferent(), null);
+	}
+
+	final Set<Class<?>> referents = getReferents(selectBuilder, whereBuilder, afterWhereBuilder);
+	final ClauseBuilder<?> fromBuilder = from(referents, fetchJoins);
+
+	final String queryTxt = getQueryTxt(selectBuilder, whereBuilder, afterWhereBuilder, fromBuilder, bindings);
+	// the fetched entities are read too
+	for (FetchJoinExpression fetchJoin : fetchJoins) {
+	    referents.add(fetchJoin.getFetchedType());
+	}
+	return new BoundQuery(queryTxt, bindings, Collections.unmodifiableSet(referents));
+    }
+
+    /**
+     * Renders a query counting the rows the select and where clauses match, dropping any projection and ordering.
+     * <p>
+     * i.e. {@code selection(TestClass.class, "bar")} and {@code matching("foo", gt(2))} translates as
+     * {@code SELECT COUNT(testclass) FROM TestClass testclass WHERE testclass.foo > 2}. A distinct selection counts
+     * its distinct values instead, i.e. {@code SELECT COUNT(DISTINCT testclass.bar) ...}.
+     * 
+     * @throws UnsupportedOperationException
+     *             if a distinct selection has several columns, jpql only counts distinct single values.
+     */
+    public static BoundQuery count(ClauseBuilder<?> selectBuilder, ClauseBuilder<?> whereBuilder) {
+	final List<Expression> columns = getColumns(selectBuilder);
+	final boolean distinct = columns.stream()
+		.anyMatch(column -> column instanceof FunctionExpression && DISTINCT.equals(column.getOperator()));
+	if (!distinct) {
+	    return project("COUNT(" + toAlias(getTableName(selectBuilder.getLeadingReferent())) + ")", selectBuilder,
+		    whereBuilder);
+	}
+	if (columns.size() != 1 || columns.get(0).hasChildren()) {
+	    throw new UnsupportedOperationException("Only distinct single properties can be counted.");
+	}
+	selectBuilder.overwriteNullReferenceAndProperties(selectBuilder.getLeadingReferent(), null);
+	final Expression column = columns.get(0);
+	return project("COUNT(DISTINCT " + aliasPlusColumn(column.getReferent(), column.getProperty()) + ")",
+		selectBuilder, whereBuilder);
+    }
+
+    /**
+     * Renders a query selecting a constant for each row the select and where clauses match, dropping any projection
+     * and ordering. Running it with a single max result tells whether any row matches without hydrating it.
+     * <p>
+     * i.e. {@code selection(TestClass.class)} and {@code matching("foo", gt(2))} translates as
+     * {@code SELECT 1 FROM TestClass testclass WHERE testclass.foo > 2}.
+     */
+    public static BoundQuery exists(ClauseBuilder<?> selectBuilder, ClauseBuilder<?> whereBuilder) {
+	return project("1", selectBuilder, whereBuilder);
+    }
+
+    private static BoundQuery project(String projection, ClauseBuilder<?> selectBuilder,
+	    ClauseBuilder<?> whereBuilder) {
+	InvokationCapturer.closeImplicitScope();
+
+	selectBuilder.overwriteNullReferenceAndProperties(selectBuilder.getLeadingReferent(), null);
+	whereBuilder.overwriteNullReferenceAndProperties(selectBuilder.getLeadingReferent(), null);
+
+	final Set<Class<?>> referents = getReferents(selectBuilder, whereBuilder);
+	final ClauseBuilder<?> fromBuilder = from(referents);
+
+	final ParameterBinding bindings = new ParameterBindingImpl();
+	final StringBuilder queryBuilder = new StringBuilder();
+	queryBuilder.append("SELECT ").append(projection).append(" ");
+	queryBuilder.append(fromBuilder.build(bindings));
+	queryBuilder.append(" ");
+	queryBuilder.append(whereBuilder.build(bindings));
+
+	final String queryTxt = queryBuilder.toString().replaceAll("\\s+", " ").trim();
+	return new BoundQuery(queryTxt, bindings, Collections.unmodifiableSet(referents));
+    }
+
+    /**
+     * Returns the {@code builder} if it is a where clause, otherwise a transparent one.
+     */
+    public static ClauseBuilder<?> whereClause(ClauseBuilder<?> builder) {
+	return builder.getClauseType() == ClauseType.WHERE ? builder : TransparentBuilder.INSTANCE;
+    }
+
+    /**
+     * Returns the {@code builder} if it is a group by, having or order by clause, otherwise a transparent one.
+     */
+    public static ClauseBuilder<?> afterWhereClause(ClauseBuilder<?> builder) {
+	return isAfterWhereClause(builder) ? builder : TransparentBuilder.INSTANCE;
+    }
+
+    private static boolean isAfterWhereClause(ClauseBuilder<?> builder) {
+	return builder.getClauseType() == ClauseType.GROUP_BY //
+		|| builder.getClauseType() == ClauseType.ORDER_BY //
+		|| builder.getClauseType() == ClauseType.HAVING;
+    }
+
+    public String getText() {
+	return text;
+    }
+
+    public ParameterBinding getBindings() {
+	return bindings;
+    }
+
+    /**
+     * Returns the entity types this query reads from.
+     */
+    public Set<Class<?>> getReferents() {
+	return referents;
+    }
+
+    /**
+     * Creates the typed query in the {@code entityManager} and binds its parameters.
+     */
+    public <T> TypedQuery<T> createQuery(EntityManager entityManager, Class<T> returnType) {
+	final TypedQuery<T> query = entityManager.createQuery(text, returnType);
+	bindings.resolveParams(text, query);
+	return query;
+    }
+
+    /**
+     * Runs the query in the {@code entityManager} with the {@code options} and paging applied, returning a copy of the
+     * results which outlives the entity manager.
+     */
+    public <T> List<T> load(EntityManager entityManager, Class<T> returnType, List<MatcherOption> options,
+	    int firstResult, int maxResults) {
+	final TypedQuery<T> query = createQuery(entityManager, returnType);
+	for (MatcherOption option : options) {
+	    option.apply(query);
+	}
+	query.setFirstResult(firstResult).setMaxResults(maxResults);
+	return new ArrayList<>(query.getResultList());
+    }
+
+    @Override
+    public String toString() {
+	return text + " " + bindings.getBindings();
+    }
+
+    private static String getQueryTxt(//
+	    ClauseBuilder<?> selectBuilder, //
+	    ClauseBuilder<?> whereBuilder, //
+	    ClauseBuilder<?> afterWhereBuilder, //
+	    final ClauseBuilder<?> fromBuilder, //
+	    final ParameterBinding bindings) {
+
+	final StringBuilder queryBuilder = new StringBuilder();
+	queryBuilder.append(selectBuilder.build(bindings));
+	queryBuilder.append(" ");
+	queryBuilder.append(fromBuilder.build(bindings));
+	queryBuilder.append(" ");
+	queryBuilder.append(whereBuilder.build(bindings));
+	queryBuilder.append(" ");
+	queryBuilder.append(afterWhereBuilder.build(bindings));
+
+	final String queryTxt = queryBuilder.toString().replaceAll("\\s+", " ").trim();
+	return queryTxt;
+    }
+
+    private static Set<Class<?>> getReferents(ClauseBuilder<?>... builders) {
+	final Set<Class<?>> referents = new HashSet<>();
+	for (ClauseBuilder<?> builder : builders) {
+	    if (builder != null) {
+		referents.addAll(builder.getReferents());
+	    }
+	}
+	return referents;
+    }
+
+    private static ClauseBuilder<?> from(Collection<Class<?>> referents) {
+	return from(referents, Collections.emptyList());
+    }
+
+    private static ClauseBuilder<?> from(Collection<Class<?>> referents, Collection<FetchJoinExpression> fetchJoins) {
+	for (FetchJoinExpression fetchJoin : fetchJoins) {
+	    if (!referents.contains(fetchJoin.getReferent())) {
+		throw new IllegalArgumentException("Can't fetch '" + fetchJoin.getProperty() + "' of '"
+			+ getTableName(fetchJoin.getReferent()) + "', which isn't part of the query.");
+	    }
+	}
+
+	final FromBuilder builder = new FromBuilder();
+	final Iterator<Class<?>> it = referents.iterator();
+	while (it.hasNext()) {
+	    final Class<?> referent = it.next();
+	    builder.getExpressions().add(new FromExpression(referent));
+	    // fetch joins follow the declaration of their referent
+	    for (FetchJoinExpression fetchJoin : fetchJoins) {
+		if (fetchJoin.getReferent() == referent) {
+		    builder.getExpressions().add(fetchJoin);
+		}
+	    }
+	    if (it.hasNext()) {
+		builder.getExpressions().add(COMMA);
+	    }
+	}
+	return builder;
+    }
+}
@@ -21,15 +21,37 @@
  *******************************************************************************/
 package org.matcher;
 
-import static org.matcher.expression.Expressions.COMMA;
+import static org.matcher.BoundQuery.afterWhereClause;
+import static org.matcher.BoundQuery.whereClause;
+import static org.matcher.builder.BuilderUtils.getColumns;
 import static org.matcher.expression.Expressions.selection;
-
+import static org.matcher.name.NameBasedExpressions.in;
+import static org.matcher.name.NameBasedExpressions.matching;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 import javax.persistence.EntityGraph;
 import javax.persistence.EntityManager;
@@ -37,6 +59,7 @@ import javax.persistence.EntityManagerFactory;
 import javax.persistence.EntityTransaction;
 import javax.persistence.FlushModeType;
 import javax.persistence.LockModeType;
+import javax.persistence.PersistenceUnitUtil;
 import javax.persistence.Query;
 import javax.persistence.StoredProcedureQuery;
 import javax.persistence.TypedQuery;
@@ -44,44 +67,136 @@ import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaDelete;
 import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.CriteriaUpdate;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.EntityType;
 import javax.persistence.metamodel.Metamodel;
+import javax.persistence.metamodel.PluralAttribute;
 
+import org.matcher.async.CoalescingTypedQuery;
+import org.matcher.async.QueryCoalescer;
+import org.matcher.bean.BeanBasedMatcher;
 import org.matcher.builder.ClauseBuilder;
 import org.matcher.builder.ClauseBuilder.ClauseType;
-import org.matcher.builder.FromBuilder;
+import org.matcher.builder.ConstructorSelectBuilder;
+import org.matcher.builder.OrderByBuilder;
 import org.matcher.builder.SelectBuilder;
 import org.matcher.builder.TransparentBuilder;
-import org.matcher.expression.FromExpression;
+import org.matcher.bulk.BatchReport;
+import org.matcher.bulk.BatchWriter;
+import org.matcher.bulk.BulkDelete;
+import org.matcher.bulk.BulkStatement;
+import org.matcher.bulk.BulkUpdate;
+import org.matcher.cache.CachedTypedQuery;
+import org.matcher.cache.InvalidatingTransaction;
+import org.matcher.cache.MissCache;
+import org.matcher.cache.MissCachingTypedQuery;
+import org.matcher.cache.ResultCache;
+import org.matcher.expression.Expression;
+import org.matcher.expression.FetchJoinExpression;
 import org.matcher.expression.FunctionExpression;
 import org.matcher.expression.TypedExpression;
 import org.matcher.name.NameBasedWhereBuilder;
+import org.matcher.option.FetchOption;
+import org.matcher.option.MatcherOption;
+import org.matcher.option.QueryOption;
+import org.matcher.page.Page;
+import org.matcher.page.PageRequest;
+import org.matcher.page.PageRequest.CountMode;
 import org.matcher.parameter.ParameterBinding;
 import org.matcher.parameter.ParameterBindingImpl;
+import org.matcher.stream.Columns;
+import org.matcher.stream.Cursor;
+import org.matcher.stream.Cursors;
+import org.matcher.stream.DetachingCursor;
+import org.matcher.util.DistinctTypedQuery;
+import org.matcher.util.ManagedEntities;
 
 /**
  * An {@link EntityManager} wrapper which allows finding elements using the {@link NameBasedWhereBuilder} to compose
  * jpql expressions.
+ * <p>
+ * Every find method accepts {@link MatcherOption}s, such as the {@link QueryOption} fetch size or timeout, which
+ * tune the query execution.
  */
 @SuppressWarnings("rawtypes")
 public class EntityMatcher implements EntityManager {
 
+    private static final int DEFAULT_CHUNK_SIZE = 500;
+    private static final int COLUMNS_FETCH_SIZE = 1000;
+
     private final EntityManager delegate;
 
+    private volatile Executor executor = ForkJoinPool.commonPool();
+    private volatile MatcherOption[] defaultOptions = {};
+    private volatile ResultCache resultCache;
+    private volatile MissCache missCache;
+    private volatile QueryCoalescer queryCoalescer;
+    private final Set<Class<?>> writtenTypes = new HashSet<>();
+
     public EntityMatcher(EntityManager delegate) {
 	this.delegate = delegate;
     }
 
+    /**
+     * Sets the executor running the queries issued concurrently on other entity managers, such as the
+     * {@link #findPage(Class, SelectBuilder, ClauseBuilder, OrderByBuilder, PageRequest)} count query.
+     * <p>
+     * Defaults to the common fork join pool.
+     */
+    public void setExecutor(Executor executor) {
+	this.executor = executor;
+    }
+
+    /**
+     * Sets the options applied to every query of this matcher, before the options of the query itself.
+     */
+    public void setDefaultOptions(MatcherOption... defaultOptions) {
+	this.defaultOptions = defaultOptions.clone();
+    }
+
+    public List<MatcherOption> getDefaultOptions() {
+	return Collections.unmodifiableList(Arrays.asList(defaultOptions));
+    }
+
+    /**
+     * Pre-generates in the background the {@link BeanBasedMatcher} proxies and getters metadata of every managed
+     * entity, sparing the first bean based query of each entity the proxy class generation.
+     * <p>
+     * Equivalent to call {@link #warmUp(Executor)} using the common fork join pool.
+     */
+    public CompletableFuture<Long> warmUp() {
+	return warmUp(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Pre-generates in the background the {@link BeanBasedMatcher} proxies and getters metadata of every managed
+     * entity, sparing the first bean based query of each entity the proxy class generation.
+     * <p>
+     * Entities are prepared in parallel on the {@code executor}. The returned future completes with the warm up
+     * duration in milliseconds once every entity is prepared.
+     */
+    public CompletableFuture<Long> warmUp(Executor executor) {
+	final long start = System.nanoTime();
+	final List<CompletableFuture<Void>> preparations = new ArrayList<>();
+	for (EntityType<?> entity : getMetamodel().getEntities()) {
+	    final Class<?> type = entity.getJavaType();
+	    preparations.add(CompletableFuture.runAsync(() -> BeanBasedMatcher.prepare(type), executor));
+	}
+	return CompletableFuture.allOf(preparations.toArray(new CompletableFuture<?>[preparations.size()])) //
+		.thenApply(done -> TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
     /**
      * Returns a single element's selectBuilder defined properties matching the jpql expression.
      * <p>
      * Equivalent to call {@link Query#getSingleResult()} on the built query.
      */
-    public <T> T findUnique(Class<T> returnType, FunctionExpression<?> functionExpression) {
+    public <T> T findUnique(Class<T> returnType, FunctionExpression<?> functionExpression, MatcherOption... options) {
 	return createTypedQuery(//
 		returnType, //
 		selection(functionExpression), //
 		TransparentBuilder.INSTANCE, //
-		TransparentBuilder.INSTANCE).getSingleResult();
+		TransparentBuilder.INSTANCE, options).getSingleResult();
     }
 
     /**
@@ -89,12 +204,12 @@ public class EntityMatcher implements EntityManager {
      * <p>
      * Equivalent to call {@link Query#getSingleResult()} on the built query.
      */
-    public <T> T findUnique(Class<T> returnType, SelectBuilder<?, ?> selectBuilder) {
+    public <T> T findUnique(Class<T> returnType, SelectBuilder<?, ?> selectBuilder, MatcherOption... options) {
 	return createTypedQuery(//
 		returnType, //
 		selectBuilder, //
 		TransparentBuilder.INSTANCE, //
-		TransparentBuilder.INSTANCE).getSingleResult();
+		TransparentBuilder.INSTANCE, options).getSingleResult();
     }
 
     /**
@@ -102,12 +217,12 @@ public class EntityMatcher implements EntityManager {
      * <p>
      * Equivalent to call {@link Query#getSingleResult()} on the built query.
      */
-    public <T> T findUnique(Class<T> returnType, ClauseBuilder<?> clauseBuilder) {
+    public <T> T findUnique(Class<T> returnType, ClauseBuilder<?> clauseBuilder, MatcherOption... options) {
 	clauseBuilder.overwriteNullReferenceAndProperties(returnType, null);
 	return createTypedQuery(returnType, //
 		selection(new TypedExpression<T>(returnType)), //
-		clauseBuilder.getClauseType() == ClauseType.WHERE ? clauseBuilder : TransparentBuilder.INSTANCE, //
-		isAfterWhereClause(clauseBuilder) ? clauseBuilder : TransparentBuilder.INSTANCE).getSingleResult();
+		whereClause(clauseBuilder), //
+		afterWhereClause(clauseBuilder), options).getSingleResult();
     }
 
     /**
@@ -116,11 +231,11 @@ public class EntityMatcher implements EntityManager {
      * Equivalent to call {@link Query#getSingleResult()} on the built query.
      */
     public <T> T findUnique(Class<T> returnType, FunctionExpression<?> functionExpression,
-	    ClauseBuilder<?> clauseBuilder) {
+	    ClauseBuilder<?> clauseBuilder, MatcherOption... options) {
 	return createTypedQuery(returnType, //
 		selection(functionExpression), //
-		clauseBuilder.getClauseType() == ClauseType.WHERE ? clauseBuilder : TransparentBuilder.INSTANCE, //
-		isAfterWhereClause(clauseBuilder) ? clauseBuilder : TransparentBuilder.INSTANCE).getSingleResult();
+		whereClause(clauseBuilder), //
+		afterWhereClause(clauseBuilder), options).getSingleResult();
     }
 
     /**
@@ -128,10 +243,10 @@ public class EntityMatcher implements EntityManager {
      * <p>
      * Equivalent to call {@link Query#getSingleResult()} on the built query.
      */
-    public <T> T findUnique(Class<T> returnType, SelectBuilder<?, ?> selectBuilder, ClauseBuilder<?> clauseBuilder) {
+    public <T> T findUnique(Class<T> returnType, SelectBuilder<?, ?> selectBuilder, ClauseBuilder<?> clauseBuilder, MatcherOption... options) {
 	return createTypedQuery(returnType, selectBuilder,
-		clauseBuilder.getClauseType() == ClauseType.WHERE ? clauseBuilder : TransparentBuilder.INSTANCE, //
-		isAfterWhereClause(clauseBuilder) ? clauseBuilder : TransparentBuilder.INSTANCE).getSingleResult();
+		whereClause(clauseBuilder), //
+		afterWhereClause(clauseBuilder), options).getSingleResult();
     }
 
     /**
@@ -139,8 +254,8 @@ public class EntityMatcher implements EntityManager {
      * <p>
      * Equivalent to call {@link Query#getResultList()} on the built query.
      */
-    public <T> List<T> findAny(Class<T> clazz) {
-	return createTypedQuery(clazz, selection(clazz), TransparentBuilder.INSTANCE, TransparentBuilder.INSTANCE)
+    public <T> List<T> findAny(Class<T> clazz, MatcherOption... options) {
+	return createTypedQuery(clazz, selection(clazz), TransparentBuilder.INSTANCE, TransparentBuilder.INSTANCE, options)
 		.getResultList();
     }
 
@@ -149,12 +264,12 @@ public class EntityMatcher implements EntityManager {
      * <p>
      * Equivalent to call {@link Query#getResultList()} on the built query.
      */
-    public <T> List<T> findAny(Class<T> returnType, FunctionExpression<?> functionExpression) {
+    public <T> List<T> findAny(Class<T> returnType, FunctionExpression<?> functionExpression, MatcherOption... options) {
 	return createTypedQuery(//
 		returnType, //
 		selection(functionExpression), //
 		TransparentBuilder.INSTANCE, //
-		TransparentBuilder.INSTANCE).getResultList();
+		TransparentBuilder.INSTANCE, options).getResultList();
     }
 
     /**
@@ -162,12 +277,12 @@ public class EntityMatcher implements EntityManager {
      * <p>
      * Equivalent to call {@link Query#getResultList()} on the built query.
      */
-    public <T> List<T> findAny(Class<T> returnType, SelectBuilder<?, ?> selectBuilder) {
+    public <T> List<T> findAny(Class<T> returnType, SelectBuilder<?, ?> selectBuilder, MatcherOption... options) {
 	return createTypedQuery(//
 		returnType, //
 		selectBuilder, //
 		TransparentBuilder.INSTANCE, //
-		TransparentBuilder.INSTANCE).getResultList();
+		TransparentBuilder.INSTANCE, options).getResultList();
     }
 
     /**
@@ -175,12 +290,12 @@ public class EntityMatcher implements EntityManager {
      * <p>
      * Equivalent to call {@link Query#getResultList()} on the built query.
      */
-    public <T> List<T> findAny(Class<T> returnType, ClauseBuilder<?> clauseBuilder) {
+    public <T> List<T> findAny(Class<T> returnType, ClauseBuilder<?> clauseBuilder, MatcherOption... options) {
 	return createTypedQuery(//
 		returnType, //
 		selection(new TypedExpression<T>(returnType)), //
-		clauseBuilder.getClauseType() == ClauseType.WHERE ? clauseBuilder : TransparentBuilder.INSTANCE, //
-		isAfterWhereClause(clauseBuilder) ? clauseBuilder : TransparentBuilder.INSTANCE).getResultList();
+		whereClause(clauseBuilder), //
+		afterWhereClause(clauseBuilder), options).getResultList();
     }
 
     /**
@@ -188,12 +303,12 @@ public class EntityMatcher implements EntityManager {
      * <p>
      * Equivalent to call {@link Query#getResultList()} on the built query.
      */
-    public <T> List<T> findAny(Class<T> returnType, TypedExpression<?> typedExpression, ClauseBuilder<?> clauseBuilder) {
+    public <T> List<T> findAny(Class<T> returnType, TypedExpression<?> typedExpression, ClauseBuilder<?> clauseBuilder, MatcherOption... options) {
 	return createTypedQuery( //
 		returnType, //
 		selection(typedExpression.getType()), //
-		clauseBuilder.getClauseType() == ClauseType.WHERE ? clauseBuilder : TransparentBuilder.INSTANCE, //
-		isAfterWhereClause(clauseBuilder) ? clauseBuilder : TransparentBuilder.INSTANCE).getResultList();
+		whereClause(clauseBuilder), //
+		afterWhereClause(clauseBuilder), options).getResultList();
     }
 
     /**
@@ -201,56 +316,673 @@ public class EntityMatcher implements EntityManager {
      * <p>
      * Equivalent to call {@link Query#getResultList()} on the built query.
      */
-    public <T> List<T> findAny(Class<T> returnType, SelectBuilder<?, ?> selectBuilder, ClauseBuilder<?> clauseBuilder) {
+    public <T> List<T> findAny(Class<T> returnType, SelectBuilder<?, ?> selectBuilder, ClauseBuilder<?> clauseBuilder, MatcherOption... options) {
 	return createTypedQuery(//
 		returnType, //
 		selectBuilder, //
-		clauseBuilder.getClauseType() == ClauseType.WHERE ? clauseBuilder : TransparentBuilder.INSTANCE, //
-		isAfterWhereClause(clauseBuilder) ? clauseBuilder : TransparentBuilder.INSTANCE).getResultList();
+		whereClause(clauseBuilder), //
+		afterWhereClause(clauseBuilder), options).getResultList();
     }
 
-    private boolean isAfterWhereClause(ClauseBuilder<?> builder) {
-	return builder.getClauseType() == ClauseType.GROUP_BY //
-		|| builder.getClauseType() == ClauseType.ORDER_BY //
-		|| builder.getClauseType() == ClauseType.HAVING;
+    /**
+     * Returns whether any entity of type {@code type} matches the {@code whereBuilder}, without hydrating it.
+     */
+    public boolean exists(Class<?> type, ClauseBuilder<?> whereBuilder) {
+	final BoundQuery query = BoundQuery.exists(selection(type), countableClause(whereBuilder));
+	return !createQuery(query.getText(), query.getBindings(), Integer.class, Collections.emptyList())
+		.setMaxResults(1).getResultList().isEmpty();
     }
 
-    private <T> TypedQuery<T> createTypedQuery( //
+    /**
+     * Returns how many entities of type {@code type} match the {@code clauseBuilder}, without hydrating them.
+     * <p>
+     * The clause is either a where clause or an order by, which is dropped. Grouped clauses are rejected, since
+     * counting groups instead of rows can't be rendered as a single jpql count.
+     */
+    public long count(Class<?> type, ClauseBuilder<?> clauseBuilder) {
+	final BoundQuery query = BoundQuery.count(selection(type), countableClause(clauseBuilder));
+	return createQuery(query.getText(), query.getBindings(), Long.class, Collections.emptyList()).getSingleResult();
+    }
+
+    private static ClauseBuilder<?> countableClause(ClauseBuilder<?> clauseBuilder) {
+	if (clauseBuilder.getClauseType() == ClauseType.WHERE) {
+	    return clauseBuilder;
+	}
+	if (clauseBuilder.getClauseType() == ClauseType.ORDER_BY && clauseBuilder.getPreviousClause() == null) {
+	    // ordering doesn't change the matching rows
+	    return TransparentBuilder.INSTANCE;
+	}
+	throw new IllegalArgumentException("Can't count rows matching a " + clauseBuilder.getClauseType()
+		+ " clause, only where and order by clauses are supported.");
+    }
+
+    /**
+     * Returns the entities of type {@code type} with the {@code ids} identifiers, in the ids order and with nulls for
+     * the missing ones.
+     * <p>
+     * See {@link #findAllByIds(Class, Collection, int)}.
+     */
+    public <T> List<T> findAllByIds(Class<T> type, Collection<?> ids) {
+	return findAllByIds(type, ids, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Returns the entities of type {@code type} with the {@code ids} identifiers, in the ids order and with nulls for
+     * the missing ones.
+     * <p>
+     * Entities already managed by this entity manager are served without hitting the database, the rest are loaded
+     * with one {@code IN} query per {@code chunkSize} identifiers. Identifiers must be of the entity identifier type.
+     */
+    public <T> List<T> findAllByIds(Class<T> type, Collection<?> ids, int chunkSize) {
+	if (chunkSize <= 0) {
+	    throw new IllegalArgumentException("Chunk size must be positive.");
+	}
+	final String idProperty = getIdProperty(type);
+
+	final Map<Object, T> found = new HashMap<>();
+	final List<Object> missing = new ArrayList<>();
+	for (Object id : new LinkedHashSet<>(ids)) {
+	    if (id != null) {
+		final T managed = ManagedEntities.getManaged(delegate, type, id);
+		if (managed != null) {
+		    found.put(id, managed);
+		} else {
+		    missing.add(id);
+		}
+	    }
+	}
+
+	final PersistenceUnitUtil persistenceUnitUtil = getEntityManagerFactory().getPersistenceUnitUtil();
+	for (int from = 0; from < missing.size(); from += chunkSize) {
+	    final List<Object> chunk = missing.subList(from, Math.min(from + chunkSize, missing.size()));
+	    for (T entity : findAny(type, matching(idProperty, in(chunk)))) {
+		found.put(persistenceUnitUtil.getIdentifier(entity), entity);
+	    }
+	}
+
+	final List<T> results = new ArrayList<>(ids.size());
+	for (Object id : ids) {
+	    results.add(id == null ? null : found.get(id));
+	}
+	return results;
+    }
+
+    /**
+     * Loads the {@code association} of all {@code parents} of type {@code type}, returning the associated entities by
+     * parent identifier.
+     * <p>
+     * See {@link #loadAssociation(Class, Collection, String, Class, int)}.
+     */
+    public <C> Map<Object, List<C>> loadAssociation(Class<?> type, Collection<?> parents, String association,
+	    Class<C> associatedType) {
+	return loadAssociation(type, parents, association, associatedType, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Loads the {@code association} of all {@code parents} of type {@code type}, returning the associated entities by
+     * parent identifier, an empty list if there are none.
+     * <p>
+     * Collections are fetch joined by one {@code IN} query per {@code chunkSize} parents, which initializes them in the
+     * managed parents. Single valued associations are loaded by identifier as in
+     * {@link #findAllByIds(Class, Collection, int)}, which resolves the managed parents' proxies. Either way the
+     * association costs a single query per chunk instead of one per parent, and loading each association on its own
+     * avoids the cartesian product of fetch joining several collections at once.
+     */
+    public <C> Map<Object, List<C>> loadAssociation(Class<?> type, Collection<?> parents, String association,
+	    Class<C> associatedType, int chunkSize) {
+	if (chunkSize <= 0) {
+	    throw new IllegalArgumentException("Chunk size must be positive.");
+	}
+	final Attribute<?, ?> attribute = getMetamodel().entity(type).getAttribute(association);
+	if (!attribute.isAssociation()) {
+	    throw new IllegalArgumentException("Property '" + association + "' of '" + type.getSimpleName()
+		    + "' isn't an association.");
+	}
+	final Class<?> targetType = attribute.isCollection() ? ((PluralAttribute<?, ?, ?>) attribute).getElementType()
+		.getJavaType() : attribute.getJavaType();
+	if (!associatedType.isAssignableFrom(targetType)) {
+	    throw new IllegalArgumentException("Property '" + association + "' of '" + type.getSimpleName()
+		    + "' refers to '" + targetType.getSimpleName() + "'.");
+	}
+
+	final PersistenceUnitUtil persistenceUnitUtil = getEntityManagerFactory().getPersistenceUnitUtil();
+	final Map<Object, List<C>> associated = new LinkedHashMap<>();
+	if (attribute.isCollection()) {
+	    final String idProperty = getIdProperty(type);
+	    final List<Object> ids = new ArrayList<>();
+	    for (Object parent : parents) {
+		final Object id = persistenceUnitUtil.getIdentifier(parent);
+		if (associated.put(id, new ArrayList<>()) == null) {
+		    ids.add(id);
+		}
+	    }
+	    for (int from = 0; from < ids.size(); from += chunkSize) {
+		final List<Object> chunk = ids.subList(from, Math.min(from + chunkSize, ids.size()));
+		for (Object parent : findAny(type, matching(idProperty, in(chunk)), FetchOption.fetch(association))) {
+		    final List<C> children = associated.get(persistenceUnitUtil.getIdentifier(parent));
+		    for (Object child : (Collection<?>) readMember(attribute, parent)) {
+			children.add(associatedType.cast(child));
+		    }
+		}
+	    }
+	} else {
+	    final Map<Object, Object> targetIds = new LinkedHashMap<>();
+	    for (Object parent : parents) {
+		final Object target = readMember(attribute, parent);
+		targetIds.put(persistenceUnitUtil.getIdentifier(parent),
+			target == null ? null : ManagedEntities.getIdentifier(persistenceUnitUtil, target));
+	    }
+	    final List<?> targets = findAllByIds(targetType, targetIds.values(), chunkSize);
+	    final Iterator<?> it = targets.iterator();
+	    for (Object parentId : targetIds.keySet()) {
+		final Object target = it.next();
+		associated.put(parentId, target == null ? new ArrayList<>()
+			: new ArrayList<>(Collections.singletonList(associatedType.cast(target))));
+	    }
+	}
+	return associated;
+    }
+
+    private String getIdProperty(Class<?> type) {
+	final EntityType<?> entityType = getMetamodel().entity(type);
+	if (!entityType.hasSingleIdAttribute()) {
+	    throw new IllegalArgumentException("Class '" + type.getSimpleName() + "' has a composite identifier.");
+	}
+	return entityType.getId(entityType.getIdType().getJavaType()).getName();
+    }
+
+    private static Object readMember(Attribute<?, ?> attribute, Object entity) {
+	final Member member = attribute.getJavaMember();
+	try {
+	    if (member instanceof Field) {
+		// proxies don't hold the state of the entity they stand for
+		((Field) member).setAccessible(true);
+		return ((Field) member).get(ManagedEntities.unproxy(entity));
+	    }
+	    ((Method) member).setAccessible(true);
+	    return ((Method) member).invoke(entity);
+	} catch (ReflectiveOperationException e) {
+	    throw new IllegalStateException("Can't read '" + attribute.getName() + "'.", e);
+	}
+    }
+
+    /**
+     * Returns a page of at most {@code pageSize} elements of type {@code returnType}, using keyset pagination.
+     * <p>
+     * See {@link #findPage(Class, ClauseBuilder, OrderByBuilder, int)}.
+     */
+    public <T> Page<T> findPage(Class<T> returnType, OrderByBuilder<?> orderByBuilder, int pageSize) {
+	return findPage(returnType, TransparentBuilder.INSTANCE, orderByBuilder, pageSize);
+    }
+
+    /**
+     * Returns a page of at most {@code pageSize} elements of type {@code returnType} matching the where clause, using
+     * keyset pagination.
+     * <p>
+     * The following page is sought passing {@link Page#getNextKey()} to {@link OrderByBuilder#after(Object...)}. Pages
+     * are restricted by their sort keys instead of skipping the previous rows, so any page costs the same as the first
+     * one. The order by properties must uniquely identify a row (i.e. end with the id) and must not be null.
+     */
+    public <T> Page<T> findPage(Class<T> returnType, ClauseBuilder<?> whereBuilder, OrderByBuilder<?> orderByBuilder,
+	    int pageSize) {
+	if (pageSize <= 0) {
+	    throw new IllegalArgumentException("Page size must be positive.");
+	}
+
+	// one extra row tells whether there is a following page
+	final List<T> rows = createTypedQuery(//
+		returnType, //
+		selection(new TypedExpression<T>(returnType)), //
+		orderByBuilder.seek(whereClause(whereBuilder)), //
+		orderByBuilder).setMaxResults(pageSize + 1).getResultList();
+
+	if (rows.size() <= pageSize) {
+	    return new Page<>(rows, null);
+	}
+	final List<T> content = rows.subList(0, pageSize);
+	return new Page<>(content, readKey(content.get(pageSize - 1), orderByBuilder.getSortExpressions()));
+    }
+
+    /**
+     * Returns the requested page of elements of type {@code returnType} matching the where clause, together with the
+     * total of matching elements.
+     * <p>
+     * See {@link #findPage(Class, SelectBuilder, ClauseBuilder, OrderByBuilder, PageRequest)}.
+     */
+    public <T> Page<T> findPage(Class<T> returnType, ClauseBuilder<?> whereBuilder, OrderByBuilder<?> orderByBuilder,
+	    PageRequest pageRequest) {
+	return findPage(returnType, selection(new TypedExpression<T>(returnType)), whereBuilder, orderByBuilder,
+		pageRequest);
+    }
+
+    /**
+     * Returns the requested page of elements of type {@code returnType} matching the jpql expression, together with
+     * the total of matching elements.
+     * <p>
+     * The total is obtained from a count query derived from the same where clause, dropping the projection and the
+     * ordering. Depending on the {@link CountMode}, it runs concurrently with the page query on another entity manager
+     * of the same factory (so it doesn't see this entity manager's uncommitted changes), runs only if the page is full,
+     * or doesn't run at all.
+     */
+    public <T> Page<T> findPage(Class<T> returnType, SelectBuilder<?, ?> selectBuilder, ClauseBuilder<?> whereBuilder,
+	    OrderByBuilder<?> orderByBuilder, PageRequest pageRequest) {
+
+	final ClauseBuilder<?> where = whereClause(whereBuilder);
+	final TypedQuery<T> query = createTypedQuery(returnType, selectBuilder, where, orderByBuilder);
+	final BoundQuery countQuery = BoundQuery.count(selectBuilder, where);
+
+	final CompletableFuture<Long> concurrentCount = pageRequest.getCountMode() == CountMode.CONCURRENT
+		? count(countQuery) : null;
+
+	final List<T> content = query //
+		.setFirstResult(pageRequest.getOffset()) //
+		.setMaxResults(pageRequest.getSize()) //
+		.getResultList();
+
+	final boolean full = content.size() == pageRequest.getSize();
+	final long total;
+	if (concurrentCount != null) {
+	    total = join(concurrentCount);
+	} else if (!full && (!content.isEmpty() || pageRequest.getOffset() == 0)) {
+	    // a non full page is the last one
+	    total = pageRequest.getOffset() + content.size();
+	} else if (pageRequest.getCountMode() == CountMode.IF_FULL) {
+	    total = join(count(countQuery));
+	} else {
+	    total = Page.UNKNOWN_TOTAL;
+	}
+
+	final boolean hasNext = total == Page.UNKNOWN_TOTAL ? full : pageRequest.getOffset() + content.size() < total;
+	return new Page<>(content, hasNext, total);
+    }
+
+    private CompletableFuture<Long> count(BoundQuery countQuery) {
+	final EntityManagerFactory entityManagerFactory = delegate.getEntityManagerFactory();
+	return CompletableFuture.supplyAsync(() -> {
+	    final EntityManager entityManager = entityManagerFactory.createEntityManager();
+	    try {
+		return countQuery.createQuery(entityManager, Long.class).getSingleResult();
+	    } finally {
+		entityManager.close();
+	    }
+	}, executor);
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+	try {
+	    return future.join();
+	} catch (CompletionException e) {
+	    if (e.getCause() instanceof RuntimeException) {
+		throw (RuntimeException) e.getCause();
+	    }
+	    throw e;
+	}
+    }
+
+    private Object[] readKey(Object row, List<Expression> sortExpressions) {
+	final Object[] key = new Object[sortExpressions.size()];
+	for (int i = 0; i < key.length; i++) {
+	    final Expression sortExpression = sortExpressions.get(i);
+	    if (!sortExpression.getReferent().isInstance(row)) {
+		throw new IllegalArgumentException("Keyset pagination requires sorting by the returned type properties.");
+	    }
+	    final Attribute<?, ?> attribute;
+	    try {
+		// inherited attributes included
+		attribute = getMetamodel().managedType(sortExpression.getReferent())
+			.getAttribute(sortExpression.getProperty());
+	    } catch (IllegalArgumentException e) {
+		throw new IllegalArgumentException("Cannot read sort key '" + sortExpression.getProperty() + "'", e);
+	    }
+	    key[i] = readMember(attribute, row);
+	}
+	return key;
+    }
+
+    /**
+     * Returns a lazily fetched stream of all elements of type {@code clazz}.
+     * <p>
+     * See {@link #findStream(Class, SelectBuilder, ClauseBuilder, int)}.
+     */
+    public <T> Stream<T> findStream(Class<T> clazz, int fetchSize) {
+	return Cursors.stream(openCursor(clazz, selection(clazz), TransparentBuilder.INSTANCE,
+		TransparentBuilder.INSTANCE, fetchSize));
+    }
+
+    /**
+     * Returns a lazily fetched stream of elements of type {@code clazz} matching the jpql expression.
+     * <p>
+     * See {@link #findStream(Class, SelectBuilder, ClauseBuilder, int)}.
+     */
+    public <T> Stream<T> findStream(Class<T> returnType, ClauseBuilder<?> clauseBuilder, int fetchSize) {
+	return Cursors.stream(openCursor(//
+		returnType, //
+		selection(new TypedExpression<T>(returnType)), //
+		whereClause(clauseBuilder), //
+		afterWhereClause(clauseBuilder), //
+		fetchSize));
+    }
+
+    /**
+     * Returns a lazily fetched stream of elements of type {@code clazz} matching the jpql expression.
+     * <p>
+     * Rows are read through the provider's scrollable cursor, {@code fetchSize} rows per round trip. Returned entities
+     * are detached every {@code fetchSize} rows, so the persistence context doesn't grow with the result size.
+     * <p>
+     * The stream holds the cursor until closed, use it within a try-with-resources block.
+     */
+    public <T> Stream<T> findStream(Class<T> returnType, SelectBuilder<?, ?> selectBuilder,
+	    ClauseBuilder<?> clauseBuilder, int fetchSize) {
+	return Cursors.stream(openCursor(//
+		returnType, //
+		selectBuilder, //
+		whereClause(clauseBuilder), //
+		afterWhereClause(clauseBuilder), //
+		fetchSize));
+    }
+
+    /**
+     * Performs the {@code action} for each element of type {@code clazz} matching the jpql expression, releasing the
+     * cursor afterwards.
+     * <p>
+     * See {@link #findStream(Class, SelectBuilder, ClauseBuilder, int)}.
+     */
+    public <T> void forEach(Class<T> returnType, ClauseBuilder<?> clauseBuilder, int fetchSize,
+	    Consumer<? super T> action) {
+	try (Stream<T> stream = findStream(returnType, clauseBuilder, fetchSize)) {
+	    stream.forEach(action);
+	}
+    }
+
+    /**
+     * Performs the {@code action} for each element of type {@code clazz} matching the jpql expression, releasing the
+     * cursor afterwards.
+     * <p>
+     * See {@link #findStream(Class, SelectBuilder, ClauseBuilder, int)}.
+     */
+    public <T> void forEach(Class<T> returnType, SelectBuilder<?, ?> selectBuilder, ClauseBuilder<?> clauseBuilder,
+	    int fetchSize, Consumer<? super T> action) {
+	try (Stream<T> stream = findStream(returnType, selectBuilder, clauseBuilder, fetchSize)) {
+	    stream.forEach(action);
+	}
+    }
+
+    /**
+     * Returns the values of a single integral column selection matching the {@code whereBuilder}.
+     * <p>
+     * See {@link #findColumns(SelectBuilder, ClauseBuilder)}.
+     */
+    public long[] findLongs(SelectBuilder<?, ?> selectBuilder, ClauseBuilder<?> whereBuilder) {
+	return findColumn(selectBuilder, whereBuilder).getLongs(0);
+    }
+
+    /**
+     * Returns the values of a single integral column selection matching the {@code whereBuilder}, which must fit in
+     * an {@code int}.
+     * <p>
+     * See {@link #findColumns(SelectBuilder, ClauseBuilder)}.
+     */
+    public int[] findInts(SelectBuilder<?, ?> selectBuilder, ClauseBuilder<?> whereBuilder) {
+	return findColumn(selectBuilder, whereBuilder).getInts(0);
+    }
+
+    /**
+     * Returns the values of a single numeric column selection matching the {@code whereBuilder}.
+     * <p>
+     * See {@link #findColumns(SelectBuilder, ClauseBuilder)}.
+     */
+    public double[] findDoubles(SelectBuilder<?, ?> selectBuilder, ClauseBuilder<?> whereBuilder) {
+	return findColumn(selectBuilder, whereBuilder).getDoubles(0);
+    }
+
+    /**
+     * Returns the numeric columns selected by the {@code selectBuilder} matching the {@code clauseBuilder}, stored in
+     * primitive arrays.
+     * <p>
+     * Rows are read one at a time through the provider's scrollable cursor, so no boxed value or row is retained.
+     */
+    public Columns findColumns(SelectBuilder<?, ?> selectBuilder, ClauseBuilder<?> clauseBuilder) {
+	@SuppressWarnings("unchecked")
+	final Class<Object> rowType = (Class<Object>) (getColumns(selectBuilder).size() > 1 ? Object[].class
+		: Object.class);
+	final Columns columns = new Columns();
+	try (Cursor<Object> cursor = openCursor(rowType, selectBuilder, whereClause(clauseBuilder),
+		afterWhereClause(clauseBuilder), COLUMNS_FETCH_SIZE)) {
+	    while (cursor.hasNext()) {
+		columns.add(cursor.next());
+	    }
+	}
+	return columns;
+    }
+
+    private Columns findColumn(SelectBuilder<?, ?> selectBuilder, ClauseBuilder<?> clauseBuilder) {
+	final Columns columns = findColumns(selectBuilder, clauseBuilder);
+	if (columns.getColumnCount() > 1) {
+	    throw new IllegalArgumentException("Expected a single column, found " + columns.getColumnCount() + ".");
+	}
+	return columns;
+    }
+
+    private <T> Cursor<T> openCursor( //
 	    Class<T> returnType, //
 	    ClauseBuilder<?> selectBuilder, //
 	    ClauseBuilder<?> whereBuilder, //
-	    ClauseBuilder<?> afterWhereBuilder) {
+	    ClauseBuilder<?> afterWhereBuilder, //
+	    int fetchSize) {
 
-	selectBuilder.overwriteNullReferenceAndProperties(selectBuilder.getLeadingReferent(), null);
-	whereBuilder.overwriteNullReferenceAndProperties(selectBuilder.getLeadingReferent(), null);
-	afterWhereBuilder.overwriteNullReferenceAndProperties(selectBuilder.getLeadingReferent(), null);
+	final TypedQuery<T> query = createTypedQuery(returnType, selectBuilder, whereBuilder, afterWhereBuilder);
+	final Cursor<T> cursor = Cursors.open(query, fetchSize);
+	return isEntity(returnType) ? new DetachingCursor<>(cursor, getExecutingEntityManager(query), fetchSize)
+		: cursor;
+    }
 
-	final Set<Class<?>> referents = getReferents(selectBuilder, whereBuilder, afterWhereBuilder);
-	final ClauseBuilder<?> fromBuilder = from(referents);
+    /**
+     * Returns the entity manager which runs the {@code query}, and so holds the entities it reads. Subclasses creating
+     * their queries on other entity managers must return them.
+     */
+    protected EntityManager getExecutingEntityManager(TypedQuery<?> query) {
+	return delegate;
+    }
 
-	final ParameterBinding bindings = new ParameterBindingImpl();
-	final String queryTxt = getQueryTxt(selectBuilder, whereBuilder, afterWhereBuilder, fromBuilder, bindings);
-	return createQuery(queryTxt, bindings, returnType);
+    private boolean isEntity(Class<?> type) {
+	for (EntityType<?> entity : getMetamodel().getEntities()) {
+	    if (entity.getJavaType() == type) {
+		return true;
+	    }
+	}
+	return false;
     }
 
-    private String getQueryTxt(//
+    private <T> TypedQuery<T> createTypedQuery( //
+	    Class<T> returnType, //
 	    ClauseBuilder<?> selectBuilder, //
 	    ClauseBuilder<?> whereBuilder, //
 	    ClauseBuilder<?> afterWhereBuilder, //
-	    final ClauseBuilder<?> fromBuilder, //
-	    final ParameterBinding bindings) {
+	    MatcherOption... options) {
 
-	final StringBuilder queryBuilder = new StringBuilder();
-	queryBuilder.append(selectBuilder.build(bindings));
-	queryBuilder.append(" ");
-	queryBuilder.append(fromBuilder.build(bindings));
-	queryBuilder.append(" ");
-	queryBuilder.append(whereBuilder.build(bindings));
-	queryBuilder.append(" ");
-	queryBuilder.append(afterWhereBuilder.build(bindings));
+	if (selectBuilder instanceof ConstructorSelectBuilder) {
+	    // fails before the provider, which doesn't tell which constructor is missing
+	    ((ConstructorSelectBuilder<?, ?>) selectBuilder).getConstructor(getMetamodel());
+	}
+	final List<FetchJoinExpression> fetchJoins = new ArrayList<>();
+	for (MatcherOption option : options) {
+	    if (option instanceof FetchOption && ((FetchOption) option).isJoin()) {
+		fetchJoins.add(((FetchOption) option).toExpression());
+	    }
+	}
+	final BoundQuery query = BoundQuery.of(selectBuilder, whereBuilder, afterWhereBuilder,
+		new ParameterBindingImpl(), fetchJoins);
+	TypedQuery<T> typedQuery = createQuery(query.getText(), query.getBindings(), returnType, Arrays.asList(options));
+
+	final List<MatcherOption> allOptions = new ArrayList<>(Arrays.asList(defaultOptions));
+	allOptions.addAll(Arrays.asList(options));
+	final boolean locking = QueryOption.isLocking(allOptions);
+	final boolean loadGraph = allOptions.stream()
+		.anyMatch(option -> option instanceof FetchOption && !((FetchOption) option).isJoin());
+
+	// reads within a transaction must see its own writes
+	final boolean transactional = delegate.getTransaction().isActive();
+	final ResultCache cache = resultCache;
+	final QueryCoalescer coalescer = queryCoalescer;
+	if (cache != null && cache.isCached(query.getReferents()) && !locking && !loadGraph && !transactional) {
+	    // load graphs read types unknown to the query
+	    typedQuery = new CachedTypedQuery<>(typedQuery, query, returnType, allOptions, getEntityManagerFactory(),
+		    cache);
+	} else if (coalescer != null && !locking && !transactional) {
+	    typedQuery = new CoalescingTypedQuery<>(typedQuery, query, returnType, allOptions, coalescer);
+	}
 
-	final String queryTxt = queryBuilder.toString().replaceAll("\\s+", " ").trim();
-	return queryTxt;
+	for (FetchJoinExpression fetchJoin : fetchJoins) {
+	    if (getMetamodel().entity(fetchJoin.getReferent()).getAttribute(fetchJoin.getProperty()).isCollection()) {
+		// each collection element repeats its owner row
+		typedQuery = new DistinctTypedQuery<>(typedQuery);
+		break;
+	    }
+	}
+
+	final MissCache misses = missCache;
+	if (misses != null && !locking && !transactional) {
+	    typedQuery = new MissCachingTypedQuery<>(typedQuery, query, returnType, allOptions, misses);
+	}
+	return typedQuery;
+    }
+
+    /**
+     * Sets the cache of the queries reading from its cached types, or null to disable it.
+     * <p>
+     * Writes through this matcher invalidate the cached results of the written types. See {@link ResultCache}.
+     */
+    public void setResultCache(ResultCache resultCache) {
+	this.resultCache = resultCache;
+    }
+
+    public ResultCache getResultCache() {
+	return resultCache;
+    }
+
+    /**
+     * Sets the cache of the unique queries finding no result, or null to disable it.
+     * <p>
+     * Writes through this matcher forget the misses of the written types. See {@link MissCache}.
+     */
+    public void setMissCache(MissCache missCache) {
+	this.missCache = missCache;
+    }
+
+    public MissCache getMissCache() {
+	return missCache;
+    }
+
+    /**
+     * Sets the coalescer running the identical concurrent queries of the matchers sharing it once, or null to disable
+     * it.
+     * <p>
+     * Queries answered by the result cache, locking queries and queries within a transaction aren't coalesced. See
+     * {@link QueryCoalescer}.
+     */
+    public void setQueryCoalescer(QueryCoalescer queryCoalescer) {
+	this.queryCoalescer = queryCoalescer;
+    }
+
+    public QueryCoalescer getQueryCoalescer() {
+	return queryCoalescer;
+    }
+
+    private boolean isCaching() {
+	return resultCache != null || missCache != null;
+    }
+
+    private void invalidate(Class<?> type) {
+	final ResultCache results = resultCache;
+	if (results != null) {
+	    results.invalidate(type);
+	}
+	final MissCache misses = missCache;
+	if (misses != null) {
+	    misses.invalidate(type);
+	}
+    }
+
+    private void written(Class<?> type) {
+	if (isCaching()) {
+	    invalidate(type);
+	    synchronized (writtenTypes) {
+		writtenTypes.add(type);
+	    }
+	}
+    }
+
+    /**
+     * Starts a bulk update of the {@code type} rows, i.e.
+     * {@code update(TestClass.class).set("foo", plus(1)).where(matching("bar", eq("Hello")))}.
+     * <p>
+     * See {@link BulkStatement}.
+     */
+    public <T> BulkUpdate<T> update(Class<T> type) {
+	return new BulkUpdate<>(delegate, type, this::written);
+    }
+
+    /**
+     * Starts a bulk delete of the {@code type} rows, i.e. {@code delete(TestClass.class).where(matching("foo", gt(2)))}.
+     * <p>
+     * See {@link BulkStatement}.
+     */
+    public <T> BulkDelete<T> delete(Class<T> type) {
+	return new BulkDelete<>(delegate, type, this::written);
+    }
+
+    /**
+     * Persists the {@code entities} in batches of the configured JDBC batch size, flushing and clearing this entity
+     * manager after each batch.
+     * <p>
+     * See {@link BatchWriter#write(EntityManager, Iterable, int, java.util.function.BiConsumer)}.
+     */
+    public BatchReport persistAll(Iterable<?> entities) {
+	return writeAll(entities, BatchWriter.getBatchSize(getEntityManagerFactory()), 1, EntityManager::persist);
+    }
+
+    /**
+     * Persists the {@code entities} in batches of {@code batchSize}. With a {@code parallelism} of one they are
+     * persisted by this entity manager, otherwise by as many entity managers of its factory in parallel, on this
+     * matcher executor, each batch in its own transaction.
+     * <p>
+     * See {@link BatchWriter}.
+     */
+    public BatchReport persistAll(Iterable<?> entities, int batchSize, int parallelism) {
+	return writeAll(entities, batchSize, parallelism, EntityManager::persist);
+    }
+
+    /**
+     * Merges the {@code entities} in batches of the configured JDBC batch size, flushing and clearing this entity
+     * manager after each batch.
+     * <p>
+     * See {@link BatchWriter#write(EntityManager, Iterable, int, java.util.function.BiConsumer)}.
+     */
+    public BatchReport mergeAll(Iterable<?> entities) {
+	return writeAll(entities, BatchWriter.getBatchSize(getEntityManagerFactory()), 1, EntityManager::merge);
+    }
+
+    /**
+     * Merges the {@code entities} in batches of {@code batchSize}, as {@link #persistAll(Iterable, int, int)} does.
+     */
+    public BatchReport mergeAll(Iterable<?> entities, int batchSize, int parallelism) {
+	return writeAll(entities, batchSize, parallelism, EntityManager::merge);
+    }
+
+    private BatchReport writeAll(Iterable<?> entities, int batchSize, int parallelism,
+	    BiConsumer<EntityManager, Object> operation) {
+	final Set<Class<?>> types = ConcurrentHashMap.newKeySet();
+	final BiConsumer<EntityManager, Object> recording = (entityManager, entity) -> {
+	    operation.accept(entityManager, entity);
+	    types.add(entity.getClass());
+	};
+	try {
+	    return parallelism == 1 ? BatchWriter.write(delegate, entities, batchSize, recording)
+		    : BatchWriter.write(getEntityManagerFactory(), entities, batchSize, parallelism, executor,
+			    recording);
+	} finally {
+	    types.forEach(this::written);
+	}
     }
 
     /**
@@ -263,14 +995,22 @@ public class EntityMatcher implements EntityManager {
 	return query;
     }
 
-    private Set<Class<?>> getReferents(ClauseBuilder<?>... builders) {
-	final Set<Class<?>> referents = new HashSet<>();
-	for (ClauseBuilder<?> builder : builders) {
-	    if (builder != null) {
-		referents.addAll(builder.getReferents());
-	    }
+    /**
+     * Creates the query with {@link #createQuery(String, ParameterBinding, Class)} and applies the default options to
+     * it, then the query {@code options} so that they override them.
+     * <p>
+     * Subclasses deciding on the options, i.e. where to run locking queries, override this one instead.
+     */
+    protected <T> TypedQuery<T> createQuery(String queryTxt, ParameterBinding bindings, Class<T> returnType,
+	    List<MatcherOption> options) {
+	final TypedQuery<T> query = createQuery(queryTxt, bindings, returnType);
+	for (MatcherOption option : defaultOptions) {
+	    option.apply(query);
 	}
-	return referents;
+	for (MatcherOption option : options) {
+	    option.apply(query);
+	}
+	return query;
     }
 
     // delegated methods
@@ -452,7 +1192,8 @@ public class EntityMatcher implements EntityManager {
 
     @Override
     public EntityTransaction getTransaction() {
-	return delegate.getTransaction();
+	return isCaching() ? new InvalidatingTransaction(delegate.getTransaction(), this::invalidate, writtenTypes)
+		: delegate.getTransaction();
     }
 
     @Override
@@ -482,12 +1223,15 @@ public class EntityMatcher implements EntityManager {
 
     @Override
     public <T> T merge(T arg0) {
-	return delegate.merge(arg0);
+	final T merged = delegate.merge(arg0);
+	written(arg0.getClass());
+	return merged;
     }
 
     @Override
     public void persist(Object arg0) {
 	delegate.persist(arg0);
+	written(arg0.getClass());
     }
 
     @Override
@@ -513,6 +1257,7 @@ public class EntityMatcher implements EntityManager {
     @Override
     public void remove(Object arg0) {
 	delegate.remove(arg0);
+	written(arg0.getClass());
     }
 
     @Override
@@ -529,17 +1274,4 @@ public class EntityMatcher implements EntityManager {
     public <T> T unwrap(Class<T> arg0) {
 	return delegate.unwrap(arg0);
     }
-
-    private static <T> ClauseBuilder from(Collection<Class<?>> referents) {
-	final FromBuilder builder = new FromBuilder();
-	final Iterator<Class<?>> it = referents.iterator();
-	if (it.hasNext()) {
-	    builder.getExpressions().add(new FromExpression(it.next()));
-	    while (it.hasNext()) {
-		builder.getExpressions().add(COMMA);
-		builder.getExpressions().add(new FromExpression(it.next()));
-	    }
-	}
-	return builder;
-    }
 }
@@ -0,0 +1,246 @@
+/*******************************************************************************
+ * Copyright (c) 2018, Xavier Miret Andres <xavier.mires@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package org.matcher.async;
+
+import static org.matcher.BoundQuery.afterWhereClause;
+import static org.matcher.BoundQuery.whereClause;
+import static org.matcher.expression.Expressions.selection;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.matcher.BoundQuery;
+import org.matcher.EntityMatcher;
+import org.matcher.builder.ClauseBuilder;
+import org.matcher.builder.SelectBuilder;
+import org.matcher.expression.TypedExpression;
+
+/**
+ * An asynchronous facade over an {@link EntityManagerFactory}, allowing independent queries to run in parallel.
+ * <p>
+ * Queries are rendered on the calling thread and executed on a bounded executor, where each task borrows an entity
+ * manager from an {@link EntityManagerPool} sized as the executor. Returned entities are detached.
+ */
+public class AsyncEntityMatcher implements AutoCloseable {
+
+    private static final AtomicInteger instances = new AtomicInteger();
+
+    private final EntityManagerPool pool;
+    private final ThreadPoolExecutor executor;
+    private final int queueDepth;
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * Creates an asynchronous matcher which rejects tasks by failing their future when the queue is full.
+     */
+    public AsyncEntityMatcher(EntityManagerFactory entityManagerFactory, int poolSize, int queueDepth) {
+	this(entityManagerFactory, poolSize, queueDepth, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Creates an asynchronous matcher running up to {@code poolSize} queries concurrently and queuing up to
+     * {@code queueDepth} more, the {@code rejectionHandler} deciding what happens with the rest (i.e.
+     * {@link ThreadPoolExecutor.CallerRunsPolicy} to run them on the calling thread). Tasks a handler silently
+     * drops have their future failed, {@link ThreadPoolExecutor.DiscardOldestPolicy} is not supported.
+     */
+    public AsyncEntityMatcher(EntityManagerFactory entityManagerFactory, int poolSize, int queueDepth,
+	    RejectedExecutionHandler rejectionHandler) {
+	if (rejectionHandler instanceof ThreadPoolExecutor.DiscardOldestPolicy) {
+	    throw new IllegalArgumentException("Discarding queued tasks would leave their futures incomplete.");
+	}
+	this.pool = new EntityManagerPool(entityManagerFactory, poolSize);
+	this.queueDepth = queueDepth;
+	this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+		new ArrayBlockingQueue<>(queueDepth), threadFactory(instances.incrementAndGet()), (task, executor) -> {
+		    rejected.incrementAndGet();
+		    rejectionHandler.rejectedExecution(task, executor);
+		    // a handler neither throwing nor running nor queuing the task dropped it
+		    final Task dropped = (Task) task;
+		    if (!dropped.started && !executor.getQueue().contains(dropped)) {
+			dropped.future.completeExceptionally(new RejectedExecutionException("Task discarded."));
+		    }
+		});
+    }
+
+    /**
+     * An executor task completing its future.
+     */
+    private static class Task implements Runnable {
+	final CompletableFuture<?> future;
+	final Runnable body;
+	volatile boolean started = false;
+
+	Task(CompletableFuture<?> future, Runnable body) {
+	    this.future = future;
+	    this.body = body;
+	}
+
+	@Override
+	public void run() {
+	    started = true;
+	    body.run();
+	}
+    }
+
+    private static ThreadFactory threadFactory(int instance) {
+	final AtomicInteger threads = new AtomicInteger();
+	return task -> {
+	    final Thread thread = new Thread(task, "entity-matcher-async-" + instance + "-" + threads.incrementAndGet());
+	    thread.setDaemon(true);
+	    return thread;
+	};
+    }
+
+    /**
+     * See {@link EntityMatcher#findAny(Class, ClauseBuilder)}.
+     */
+    public <T> CompletableFuture<List<T>> findAnyAsync(Class<T> returnType, ClauseBuilder<?> clauseBuilder) {
+	final BoundQuery query = BoundQuery.of(selection(new TypedExpression<T>(returnType)), clauseBuilder);
+	return submit(entityManager -> query.createQuery(entityManager, returnType).getResultList());
+    }
+
+    /**
+     * See {@link EntityMatcher#findAny(Class, SelectBuilder, ClauseBuilder)}.
+     */
+    public <T> CompletableFuture<List<T>> findAnyAsync(Class<T> returnType, SelectBuilder<?, ?> selectBuilder,
+	    ClauseBuilder<?> clauseBuilder) {
+	final BoundQuery query = BoundQuery.of(selectBuilder, whereClause(clauseBuilder),
+		afterWhereClause(clauseBuilder));
+	return submit(entityManager -> query.createQuery(entityManager, returnType).getResultList());
+    }
+
+    /**
+     * See {@link EntityMatcher#findUnique(Class, ClauseBuilder)}.
+     */
+    public <T> CompletableFuture<T> findUniqueAsync(Class<T> returnType, ClauseBuilder<?> clauseBuilder) {
+	final BoundQuery query = BoundQuery.of(selection(new TypedExpression<T>(returnType)), clauseBuilder);
+	return submit(entityManager -> query.createQuery(entityManager, returnType).getSingleResult());
+    }
+
+    /**
+     * See {@link EntityMatcher#findUnique(Class, SelectBuilder, ClauseBuilder)}.
+     */
+    public <T> CompletableFuture<T> findUniqueAsync(Class<T> returnType, SelectBuilder<?, ?> selectBuilder,
+	    ClauseBuilder<?> clauseBuilder) {
+	final BoundQuery query = BoundQuery.of(selectBuilder, whereClause(clauseBuilder),
+		afterWhereClause(clauseBuilder));
+	return submit(entityManager -> query.createQuery(entityManager, returnType).getSingleResult());
+    }
+
+    /**
+     * Runs the {@code task} with a pooled entity matcher, detaching any entity it returns.
+     * <p>
+     * Builders are not thread safe, the task should only use builders it creates itself.
+     */
+    public <T> CompletableFuture<T> submit(Function<? super EntityMatcher, ? extends T> task) {
+	final CompletableFuture<T> future = new CompletableFuture<>();
+	try {
+	    executor.execute(new Task(future, () -> {
+		final EntityManager entityManager;
+		try {
+		    entityManager = pool.borrow();
+		} catch (InterruptedException e) {
+		    Thread.currentThread().interrupt();
+		    future.completeExceptionally(e);
+		    return;
+		}
+		try {
+		    future.complete(task.apply(new EntityMatcher(entityManager)));
+		} catch (Throwable e) {
+		    future.completeExceptionally(e);
+		} finally {
+		    pool.release(entityManager);
+		}
+	    }));
+	} catch (RejectedExecutionException e) {
+	    future.completeExceptionally(e);
+	}
+	return future;
+    }
+
+    public int getPoolSize() {
+	return executor.getMaximumPoolSize();
+    }
+
+    public int getQueueDepth() {
+	return queueDepth;
+    }
+
+    /**
+     * Returns the number of tasks running.
+     */
+    public int getActiveCount() {
+	return executor.getActiveCount();
+    }
+
+    /**
+     * Returns the number of tasks waiting for a thread.
+     */
+    public int getQueuedCount() {
+	return executor.getQueue().size();
+    }
+
+    public long getCompletedCount() {
+	return executor.getCompletedTaskCount();
+    }
+
+    /**
+     * Returns the number of tasks which didn't fit in the queue, no matter how the rejection handler dealt with them.
+     */
+    public long getRejectedCount() {
+	return rejected.get();
+    }
+
+    /**
+     * Returns the entity manager pool, for its metrics.
+     */
+    public EntityManagerPool getEntityManagerPool() {
+	return pool;
+    }
+
+    /**
+     * Waits for the submitted tasks to complete and closes the pooled entity managers.
+     */
+    @Override
+    public void close() {
+	executor.shutdown();
+	try {
+	    executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	} finally {
+	    pool.close();
+	}
+    }
+}
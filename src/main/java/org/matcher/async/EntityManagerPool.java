@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * Copyright (c) 2018, Xavier Miret Andres <xavier.mires@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package org.matcher.async;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * A bounded pool of entity managers, created lazily from the factory.
+ * <p>
+ * An entity manager is never shared, each borrower has exclusive use of it until released. Released entity managers
+ * are cleared, so any entity they loaded is detached.
+ */
+public class EntityManagerPool implements AutoCloseable {
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final int maxSize;
+
+    private final BlockingQueue<EntityManager> idle = new LinkedBlockingQueue<>();
+    private final AtomicInteger created = new AtomicInteger();
+    private volatile boolean closed = false;
+
+    public EntityManagerPool(EntityManagerFactory entityManagerFactory, int maxSize) {
+	if (maxSize <= 0) {
+	    throw new IllegalArgumentException("Pool size must be positive.");
+	}
+	this.entityManagerFactory = entityManagerFactory;
+	this.maxSize = maxSize;
+    }
+
+    /**
+     * Borrows an idle entity manager, creates a new one if the pool isn't full, or waits until one is released.
+     */
+    public EntityManager borrow() throws InterruptedException {
+	if (closed) {
+	    throw new IllegalStateException("Pool closed.");
+	}
+	final EntityManager entityManager = idle.poll();
+	if (entityManager != null) {
+	    return entityManager;
+	}
+	for (int size = created.get(); size < maxSize; size = created.get()) {
+	    if (created.compareAndSet(size, size + 1)) {
+		try {
+		    return entityManagerFactory.createEntityManager();
+		} catch (RuntimeException e) {
+		    created.decrementAndGet();
+		    throw e;
+		}
+	    }
+	}
+	return idle.take();
+    }
+
+    /**
+     * Returns the {@code entityManager} to the pool, detaching all its entities. Closed entity managers are discarded.
+     */
+    public void release(EntityManager entityManager) {
+	if (entityManager.isOpen() && !closed) {
+	    if (entityManager.getTransaction().isActive()) {
+		entityManager.getTransaction().rollback();
+	    }
+	    entityManager.clear();
+	    idle.add(entityManager);
+	} else {
+	    discard(entityManager);
+	}
+    }
+
+    private void discard(EntityManager entityManager) {
+	created.decrementAndGet();
+	if (entityManager.isOpen()) {
+	    entityManager.close();
+	}
+    }
+
+    public int getMaxSize() {
+	return maxSize;
+    }
+
+    /**
+     * Returns the number of entity managers currently alive, either idle or borrowed.
+     */
+    public int getSize() {
+	return created.get();
+    }
+
+    public int getIdle() {
+	return idle.size();
+    }
+
+    public int getBorrowed() {
+	return created.get() - idle.size();
+    }
+
+    /**
+     * Closes all idle entity managers. Borrowed ones are closed on release.
+     */
+    @Override
+    public void close() {
+	closed = true;
+	for (EntityManager entityManager = idle.poll(); entityManager != null; entityManager = idle.poll()) {
+	    discard(entityManager);
+	}
+    }
+}
@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * Copyright (c) 2018, Xavier Miret Andres <xavier.mires@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package org.matcher.async;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import javax.persistence.PersistenceException;
+import javax.persistence.QueryTimeoutException;
+
+import org.matcher.EntityMatcher;
+import org.matcher.cache.ResultCache.QueryKey;
+
+/**
+ * Runs identical concurrent queries once, all callers sharing the detached results of the execution in flight.
+ * <p>
+ * Queries are keyed as the {@link org.matcher.cache.ResultCache ResultCache} entries and executed on an
+ * {@link AsyncEntityMatcher}, since a caller's entity manager can't be shared with the others. Each caller waits up to
+ * the coalescer timeout, failing with a {@link QueryTimeoutException} otherwise. A timed out caller doesn't cancel the
+ * execution, which other callers could be waiting for, but the last one to time out stops later callers from joining
+ * it. Execution failures are propagated to every waiting caller.
+ */
+public class QueryCoalescer {
+
+    private final AsyncEntityMatcher executor;
+    private final long timeout;
+    private final TimeUnit unit;
+    private final ConcurrentMap<QueryKey, Execution> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong executionCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+
+    public QueryCoalescer(AsyncEntityMatcher executor, long timeout, TimeUnit unit) {
+	if (timeout <= 0) {
+	    throw new IllegalArgumentException("Timeout must be positive, found " + timeout + ".");
+	}
+	this.executor = executor;
+	this.timeout = timeout;
+	this.unit = unit;
+    }
+
+    /**
+     * Returns the results of the {@code key} query, running the {@code query} unless an identical one is in flight.
+     */
+    public List<?> execute(QueryKey key, Function<EntityMatcher, List<?>> query) {
+	final Execution created = new Execution();
+	final Execution running = inFlight.putIfAbsent(key, created);
+	final Execution execution;
+	if (running == null) {
+	    executionCount.incrementAndGet();
+	    executor.submit(query).whenComplete((results, failure) -> {
+		// later callers must run the query again
+		inFlight.remove(key, created);
+		if (failure == null) {
+		    created.future.complete(Collections.unmodifiableList(results));
+		} else {
+		    created.future.completeExceptionally(failure);
+		}
+	    });
+	    execution = created;
+	} else {
+	    coalescedCount.incrementAndGet();
+	    running.waiters.incrementAndGet();
+	    execution = running;
+	}
+	return await(key, execution);
+    }
+
+    private List<?> await(QueryKey key, Execution execution) {
+	try {
+	    return execution.future.get(timeout, unit);
+	} catch (TimeoutException e) {
+	    if (execution.waiters.decrementAndGet() == 0) {
+		// nobody waits for a possibly stuck execution, later callers run the query again
+		inFlight.remove(key, execution);
+	    }
+	    throw new QueryTimeoutException("Query '" + key + "' didn't complete in " + timeout + " " + unit + ".");
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new PersistenceException(e);
+	} catch (ExecutionException e) {
+	    Throwable cause = e.getCause();
+	    if (cause instanceof CompletionException && cause.getCause() != null) {
+		cause = cause.getCause();
+	    }
+	    if (cause instanceof RuntimeException) {
+		throw (RuntimeException) cause;
+	    }
+	    throw new PersistenceException(cause);
+	}
+    }
+
+    /**
+     * A query execution and the number of callers waiting for it.
+     */
+    private static class Execution {
+	final CompletableFuture<List<?>> future = new CompletableFuture<>();
+	final AtomicInteger waiters = new AtomicInteger(1);
+    }
+
+    /**
+     * Returns the number of queries in flight.
+     */
+    public int getInFlightCount() {
+	return inFlight.size();
+    }
+
+    /**
+     * Returns the number of queries executed.
+     */
+    public long getExecutionCount() {
+	return executionCount.get();
+    }
+
+    /**
+     * Returns the number of callers which shared an execution in flight.
+     */
+    public long getCoalescedCount() {
+	return coalescedCount.get();
+    }
+}
@@ -0,0 +1,255 @@
+/*******************************************************************************
+ * Copyright (c) 2018, Xavier Miret Andres <xavier.mires@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package org.matcher.batch;
+
+import static org.matcher.expression.Expressions.selection;
+import static org.matcher.name.NameBasedExpressions.in;
+import static org.matcher.name.NameBasedExpressions.matching;
+
+import java.lang.reflect.Field;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.NoResultException;
+import javax.persistence.NonUniqueResultException;
+
+import org.matcher.BoundQuery;
+import org.matcher.EntityMatcher;
+import org.matcher.expression.TypedExpression;
+
+/**
+ * Batches lookups of single entities by a key property, i.e. the {@code findUnique(type, matching("id", eq(key)))}
+ * calls of a N+1 access pattern, into {@code IN} queries.
+ * <p>
+ * Requested keys are collected until either {@code maxBatchSize} distinct keys are pending, {@code maxWait} elapses
+ * since the first pending one, or {@link #dispatch()} is called (i.e. at the end of a request scope). Each batch runs
+ * one {@code matching(keyProperty, in(keys))} query on its own entity manager, so the returned entities are detached,
+ * and completes every key future with its own row.
+ */
+public class BatchLoader<K, V> implements AutoCloseable {
+
+    private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(task -> {
+	final Thread thread = new Thread(task, "entity-matcher-batch-timer");
+	thread.setDaemon(true);
+	return thread;
+    });
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final Class<V> type;
+    private final String keyProperty;
+    private final Field keyField;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+    private final Executor executor;
+
+    private final Object lock = new Object();
+    private Map<K, CompletableFuture<V>> pending = new LinkedHashMap<>();
+    private ScheduledFuture<?> scheduledDispatch = null;
+
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+
+    /**
+     * Creates a loader running its batches on the common fork join pool.
+     */
+    public BatchLoader(EntityManagerFactory entityManagerFactory, Class<V> type, String keyProperty, int maxBatchSize,
+	    long maxWait, TimeUnit unit) {
+	this(entityManagerFactory, type, keyProperty, maxBatchSize, maxWait, unit, ForkJoinPool.commonPool());
+    }
+
+    public BatchLoader(EntityManagerFactory entityManagerFactory, Class<V> type, String keyProperty, int maxBatchSize,
+	    long maxWait, TimeUnit unit, Executor executor) {
+	if (maxBatchSize <= 0) {
+	    throw new IllegalArgumentException("Batch size must be positive.");
+	}
+	this.entityManagerFactory = entityManagerFactory;
+	this.type = type;
+	this.keyProperty = keyProperty;
+	this.keyField = getField(type, keyProperty);
+	this.maxBatchSize = maxBatchSize;
+	this.maxWaitNanos = unit.toNanos(maxWait);
+	this.executor = executor;
+    }
+
+    private static Field getField(Class<?> type, String property) {
+	try {
+	    final Field field = type.getDeclaredField(property);
+	    field.setAccessible(true);
+	    return field;
+	} catch (NoSuchFieldException | SecurityException e) {
+	    throw new IllegalArgumentException(//
+		    "Class '" + type.getSimpleName() + "' doesn't contain field named '" + property + "'.");
+	}
+    }
+
+    /**
+     * Requests the entity with the {@code key} value, which must be of the key property type.
+     * <p>
+     * The future completes as {@link EntityMatcher#findUnique(Class, org.matcher.builder.ClauseBuilder)} would do,
+     * exceptionally with a {@link NoResultException} if there is no such entity. Pending requests of the same key
+     * share the future.
+     */
+    public CompletableFuture<V> load(K key) {
+	loads.incrementAndGet();
+
+	final CompletableFuture<V> future;
+	Map<K, CompletableFuture<V>> batch = null;
+	synchronized (lock) {
+	    final CompletableFuture<V> existing = pending.get(key);
+	    if (existing != null) {
+		return existing;
+	    }
+	    future = new CompletableFuture<>();
+	    pending.put(key, future);
+	    if (pending.size() >= maxBatchSize) {
+		batch = takePending();
+	    } else if (pending.size() == 1) {
+		scheduledDispatch = timer.schedule(this::dispatch, maxWaitNanos, TimeUnit.NANOSECONDS);
+	    }
+	}
+	if (batch != null) {
+	    submit(batch);
+	}
+	return future;
+    }
+
+    /**
+     * Requests the entities with the {@code keys} values.
+     * <p>
+     * See {@link #load(Object)}.
+     */
+    public Map<K, CompletableFuture<V>> loadAll(Collection<? extends K> keys) {
+	final Map<K, CompletableFuture<V>> futures = new LinkedHashMap<>();
+	for (K key : keys) {
+	    futures.put(key, load(key));
+	}
+	return futures;
+    }
+
+    /**
+     * Dispatches the pending requests without waiting.
+     */
+    public void dispatch() {
+	final Map<K, CompletableFuture<V>> batch;
+	synchronized (lock) {
+	    batch = takePending();
+	}
+	if (!batch.isEmpty()) {
+	    submit(batch);
+	}
+    }
+
+    private Map<K, CompletableFuture<V>> takePending() {
+	if (scheduledDispatch != null) {
+	    scheduledDispatch.cancel(false);
+	    scheduledDispatch = null;
+	}
+	final Map<K, CompletableFuture<V>> batch = pending;
+	pending = new LinkedHashMap<>();
+	return batch;
+    }
+
+    private void submit(Map<K, CompletableFuture<V>> batch) {
+	batches.incrementAndGet();
+	try {
+	    executor.execute(() -> execute(batch));
+	} catch (RejectedExecutionException e) {
+	    batch.values().forEach(future -> future.completeExceptionally(e));
+	}
+    }
+
+    private void execute(Map<K, CompletableFuture<V>> batch) {
+	EntityManager entityManager = null;
+	try {
+	    entityManager = entityManagerFactory.createEntityManager();
+	    final BoundQuery query = BoundQuery.of(selection(new TypedExpression<V>(type)),
+		    matching(keyProperty, in(batch.keySet())));
+	    final List<V> rows = query.createQuery(entityManager, type).getResultList();
+
+	    final Map<Object, V> rowsByKey = new HashMap<>();
+	    final Set<Object> duplicates = new HashSet<>();
+	    for (V row : rows) {
+		final Object key = keyField.get(row);
+		if (rowsByKey.put(key, row) != null) {
+		    duplicates.add(key);
+		}
+	    }
+
+	    for (Map.Entry<K, CompletableFuture<V>> request : batch.entrySet()) {
+		final V row = rowsByKey.get(request.getKey());
+		if (row == null) {
+		    request.getValue().completeExceptionally(new NoResultException(
+			    "No " + type.getSimpleName() + " with " + keyProperty + " '" + request.getKey() + "'."));
+		} else if (duplicates.contains(request.getKey())) {
+		    request.getValue().completeExceptionally(new NonUniqueResultException(
+			    "Several " + type.getSimpleName() + " with " + keyProperty + " '" + request.getKey() + "'."));
+		} else {
+		    request.getValue().complete(row);
+		}
+	    }
+	} catch (RuntimeException | IllegalAccessException e) {
+	    batch.values().forEach(future -> future.completeExceptionally(e));
+	} finally {
+	    if (entityManager != null) {
+		entityManager.close();
+	    }
+	}
+    }
+
+    /**
+     * Returns the number of dispatched batches, each one a single query.
+     */
+    public long getBatchCount() {
+	return batches.get();
+    }
+
+    /**
+     * Returns the number of requested keys, including repeated ones.
+     */
+    public long getLoadCount() {
+	return loads.get();
+    }
+
+    /**
+     * Dispatches the pending requests.
+     */
+    @Override
+    public void close() {
+	dispatch();
+    }
+}
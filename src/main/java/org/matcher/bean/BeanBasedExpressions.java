@@ -21,6 +21,7 @@
  *******************************************************************************/
 package org.matcher.bean;
 
+import static org.matcher.bean.BeanBasedMatcher.getCapture;
 import static org.matcher.bean.BeanBasedMatcher.getPropertyName;
 import static org.matcher.bean.BeanBasedMatcher.getReferent;
 
@@ -58,39 +59,81 @@ public class BeanBasedExpressions extends Expressions {
 	return builder;
     }
 
-    public static <T> FunctionExpression<?> min(T capture) {
+    /**
+     * A selection of properties defined through getter method references.
+     * <p>
+     * i.e. {@code selection(Person::getName, Person::getAge)} translates as {@code SELECT person.name, person.age}.
+     */
+    @SafeVarargs
+    public static <T> BeanBasedSelectBuilder<?> selection(Getter<T, ?> getter, Getter<T, ?>... others) {
+	final TypedExpression<?> leading = new TypedExpression<>(null);
+	leading.addChild(toExpression(getCapture(getter)));
+	for (Getter<T, ?> other : others) {
+	    leading.addChild(COMMA);
+	    leading.addChild(toExpression(getCapture(other)));
+	}
+	return new BeanBasedSelectBuilder<>(leading);
+    }
+
+    public static FunctionExpression<?> min(Object capture) {
 	return createFunction(MIN, capture);
     }
 
-    public static <T> FunctionExpression<?> max(T capture) {
+    public static FunctionExpression<?> max(Object capture) {
 	return createFunction(MAX, capture);
     }
 
-    public static <T> FunctionExpression<?> avg(T capture) {
+    public static FunctionExpression<?> avg(Object capture) {
 	return createFunction(AVG, capture);
     }
 
-    public static <T> FunctionExpression<?> sum(T capture) {
+    public static FunctionExpression<?> sum(Object capture) {
 	return createFunction(SUM, capture);
     }
 
-    public static <T> FunctionExpression<?> count(T capture) {
+    public static FunctionExpression<?> count(Object capture) {
 	return createFunction(COUNT, capture);
     }
 
-    public static <T> FunctionExpression<?> distinct(T capture) {
+    public static FunctionExpression<?> distinct(Object capture) {
 	final FunctionExpression<?> expression = createFunction(DISTINCT, capture);
 	expression.setClosure(false);
 	return expression;
     }
 
+    public static <T> FunctionExpression<?> min(Getter<T, ?> getter) {
+	return createFunction(MIN, getCapture(getter));
+    }
+
+    public static <T> FunctionExpression<?> max(Getter<T, ?> getter) {
+	return createFunction(MAX, getCapture(getter));
+    }
+
+    public static <T> FunctionExpression<?> avg(Getter<T, ?> getter) {
+	return createFunction(AVG, getCapture(getter));
+    }
+
+    public static <T> FunctionExpression<?> sum(Getter<T, ?> getter) {
+	return createFunction(SUM, getCapture(getter));
+    }
+
+    public static <T> FunctionExpression<?> count(Getter<T, ?> getter) {
+	return createFunction(COUNT, getCapture(getter));
+    }
+
+    public static <T> FunctionExpression<?> distinct(Getter<T, ?> getter) {
+	final FunctionExpression<?> expression = createFunction(DISTINCT, getCapture(getter));
+	expression.setClosure(false);
+	return expression;
+    }
+
     private static TypedExpression<?> toExpression(Capture capture) {
 	final TypedExpression<?> expression = new TypedExpression<>(getReferent(capture));
 	expression.setProperty(getPropertyName(capture));
 	return expression;
     }
 
-    private static <T> FunctionExpression<?> createFunction(String function, T capture) {
+    private static FunctionExpression<?> createFunction(String function, Object capture) {
 	return createFunction(function, BeanBasedMatcher.getLastCapture());
     }
 
@@ -121,6 +164,16 @@ public class BeanBasedExpressions extends Expressions {
 	return builder;
     }
 
+    /**
+     * see {@link #groupBy(Object, Object...)}.
+     */
+    @SafeVarargs
+    public static <T> BeanBasedGroupByBuilder<?> groupBy(Getter<T, ?> getter, Getter<T, ?>... others) {
+	final BeanBasedGroupByBuilder<?> builder = new BeanBasedGroupByBuilder<>(null, null);
+	builder.getExpressions().add(toExpressions(getter, others));
+	return builder;
+    }
+
     // order by
 
     /**
@@ -142,12 +195,33 @@ public class BeanBasedExpressions extends Expressions {
 	return builder;
     }
 
+    /**
+     * see {@link #orderBy(Object, Object...)}.
+     */
+    @SafeVarargs
+    public static <T, E> OrderByBuilder<E> orderBy(Getter<T, ?> getter, Getter<T, ?>... others) {
+	final OrderByBuilder<E> builder = new OrderByBuilder<>(null, null);
+	builder.getExpressions().add(toExpressions(getter, others));
+	return builder;
+    }
+
+    @SafeVarargs
+    private static <T> TypedExpression<?> toExpressions(Getter<T, ?> getter, Getter<T, ?>... others) {
+	final TypedExpression<?> leading = new TypedExpression<>(null);
+	leading.addChild(toExpression(getCapture(getter)));
+	for (Getter<T, ?> other : others) {
+	    leading.addChild(COMMA);
+	    leading.addChild(toExpression(getCapture(other)));
+	}
+	return leading;
+    }
+
     // matchers
 
     /**
      * Typifies the {@code builder} and all its children with a referent table and a column property.
      */
-    public static <T> BeanBasedWhereBuilder matching(T capture, BeanBasedWhereBuilder builder) {
+    public static BeanBasedWhereBuilder matching(Object capture, BeanBasedWhereBuilder builder) {
 	final Capture lastCapture = BeanBasedMatcher.getLastCapture();
 	final Class<?> referent = getReferent(lastCapture);
 	final String property = getPropertyName(lastCapture);
@@ -156,7 +230,7 @@ public class BeanBasedExpressions extends Expressions {
 	return builder;
     }
 
-    public static <T> BeanBasedWhereBuilder matching(T capture) {
+    public static BeanBasedWhereBuilder matching(Object capture) {
 	final Capture lastCapture = BeanBasedMatcher.getLastCapture();
 	final Class<?> referent = getReferent(lastCapture);
 	final String property = getPropertyName(lastCapture);
@@ -164,6 +238,26 @@ public class BeanBasedExpressions extends Expressions {
 	return new BeanBasedWhereBuilder(NameBasedExpressions.matching(property, referent));
     }
 
+    /**
+     * Typifies the {@code builder} and all its children with the referent table and column property of the
+     * {@code getter} method reference.
+     * <p>
+     * i.e. {@code matching(Person::getName, eq("Xiermires"))} translates as {@code person.name = 'Xiermires'}.
+     */
+    public static <T> BeanBasedWhereBuilder matching(Getter<T, ?> getter, BeanBasedWhereBuilder builder) {
+	final Capture capture = getCapture(getter);
+	builder.overwriteNullReferenceAndProperties(getReferent(capture), getPropertyName(capture));
+	return builder;
+    }
+
+    /**
+     * An inner join expression against the {@code getter} method reference referent and property.
+     */
+    public static <T> BeanBasedWhereBuilder matching(Getter<T, ?> getter) {
+	final Capture capture = getCapture(getter);
+	return new BeanBasedWhereBuilder(NameBasedExpressions.matching(getPropertyName(capture), getReferent(capture)));
+    }
+
     // expressions
 
     /**
@@ -21,14 +21,24 @@
  *******************************************************************************/
 package org.matcher.bean;
 
+import java.lang.invoke.MethodHandleInfo;
+import java.lang.invoke.SerializedLambda;
 import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.matcher.bean.InvokationCapturer.Capture;
 
 public class BeanBasedMatcher {
+
+    private static final Map<Class<?>, Capture> getterCaptures = new ConcurrentHashMap<>();
+    private static final Map<Method, Field> getterProperties = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, Object> sharedMatchers = new ConcurrentHashMap<>();
+
     /**
      * Returns an instance of a class which might be used to match {@link Statements}.
      */
@@ -36,10 +46,75 @@ public class BeanBasedMatcher {
 	return InvokationCapturer.capturer(clazz, m -> isBeanGetter(m));
     }
 
+    /**
+     * Returns the single cached matcher instance of a class, instead of creating a new one as {@link #matcher(Class)}
+     * does.
+     * <p>
+     * Matcher instances hold no state, captures are kept per thread, so a cached instance can be shared between threads
+     * and used several times within the same expression. Only its getters are meant to be invoked, as with any other
+     * matcher.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T sharedMatcher(Class<T> clazz) {
+	return (T) sharedMatchers.computeIfAbsent(clazz, c -> matcher(c));
+    }
+
+    /**
+     * Generates the matcher proxy class and resolves the getters metadata of {@code clazz} ahead of its first use.
+     * <p>
+     * Getters not backed by a field are skipped, they can't be used to match anyway.
+     */
+    public static void prepare(Class<?> clazz) {
+	InvokationCapturer.proxyClass(clazz, m -> isBeanGetter(m));
+	for (Method method : clazz.getMethods()) {
+	    if (isBeanGetter(method) && method.getParameterCount() == 0 && hasProperty(method)) {
+		getProperty(method);
+	    }
+	}
+    }
+
     public static Capture getLastCapture() {
 	return InvokationCapturer.getLastCapture();
     }
 
+    /**
+     * Resolves a getter method reference into the same capture a matcher invokation would have produced.
+     * <p>
+     * The resolution is done once per method reference call site and cached afterwards.
+     */
+    static Capture getCapture(Getter<?, ?> getter) {
+	return getterCaptures.computeIfAbsent(getter.getClass(), c -> new Capture(toMethod(getter)));
+    }
+
+    private static Method toMethod(Getter<?, ?> getter) {
+	final SerializedLambda lambda = toSerializedLambda(getter);
+	if (lambda.getImplMethodKind() != MethodHandleInfo.REF_invokeVirtual
+		|| !lambda.getImplMethodSignature().startsWith("()")) {
+	    throw new IllegalArgumentException("Not a getter method reference '" + lambda.getImplMethodName() + "'");
+	}
+	try {
+	    final ClassLoader classLoader = getter.getClass().getClassLoader();
+	    final Class<?> type = Class.forName(lambda.getImplClass().replace('/', '.'), false, classLoader);
+	    final Method method = type.getMethod(lambda.getImplMethodName());
+	    if (!isBeanGetter(method)) {
+		throw new IllegalArgumentException("Not a getter '" + method.getName() + "'");
+	    }
+	    return method;
+	} catch (ClassNotFoundException | NoSuchMethodException e) {
+	    throw new IllegalArgumentException("Cannot resolve getter '" + lambda.getImplMethodName() + "'", e);
+	}
+    }
+
+    private static SerializedLambda toSerializedLambda(Getter<?, ?> getter) {
+	try {
+	    final Method writeReplace = getter.getClass().getDeclaredMethod("writeReplace");
+	    writeReplace.setAccessible(true);
+	    return (SerializedLambda) writeReplace.invoke(getter);
+	} catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException | ClassCastException e) {
+	    throw new IllegalArgumentException("Not a method reference '" + getter + "'", e);
+	}
+    }
+
     static final Pattern isGetter = Pattern.compile("(get|is)(.+)");
 
     private static boolean isBeanGetter(Method m) {
@@ -83,14 +158,33 @@ public class BeanBasedMatcher {
     }
 
     static Field getProperty(Method m) {
+	final Field cached = getterProperties.get(m);
+	if (cached != null) {
+	    return cached;
+	}
 	final Matcher matcher = isGetter.matcher(m.getName());
 	if (matcher.matches()) {
 	    final String fieldName = camelDown(matcher.group(2));
-	    return getField(m.getDeclaringClass(), fieldName);
+	    final Field field = getField(m.getDeclaringClass(), fieldName);
+	    getterProperties.put(m, field);
+	    return field;
 	}
 	throw new IllegalArgumentException("Not a getter '" + m.getName() + "'");
     }
 
+    private static boolean hasProperty(Method m) {
+	final Matcher matcher = isGetter.matcher(m.getName());
+	if (matcher.matches()) {
+	    try {
+		m.getDeclaringClass().getDeclaredField(camelDown(matcher.group(2)));
+		return true;
+	    } catch (NoSuchFieldException | SecurityException e) {
+		return false;
+	    }
+	}
+	return false;
+    }
+
     static Field getField(Class<?> type, String name) {
 	try {
 	    return type.getDeclaredField(name);
@@ -46,6 +46,13 @@ public class BeanBasedSelectBuilder<T> extends SelectBuilder<T, BeanBasedSelectB
 	return this;
     }
 
+    @SafeVarargs
+    public final <E> BeanBasedSelectBuilder<?> and(Getter<E, ?> getter, Getter<E, ?>... others) {
+	getExpressions().addLast(COMMA);
+	getExpressions().addAll(selection(getter, others).getExpressions());
+	return this;
+    }
+
     public BeanBasedSelectBuilder<?> and(FunctionExpression<?> expression, FunctionExpression<?>... others) {
 	getExpressions().addLast(COMMA);
 	getExpressions().addAll(selection(expression, others).getExpressions());
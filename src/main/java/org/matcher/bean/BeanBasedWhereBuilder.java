@@ -61,18 +61,30 @@ public class BeanBasedWhereBuilder extends WhereBuilder<BeanBasedWhereBuilder> {
 	return delegate.getReferents();
     }
 
-    public <E> BeanBasedWhereBuilder or(E property, BeanBasedWhereBuilder other) {
+    public BeanBasedWhereBuilder or(Object property, BeanBasedWhereBuilder other) {
 	final Capture lastCapture = InvokationCapturer.getLastCapture();
 	delegate.or(getReferent(lastCapture), getPropertyName(lastCapture), other.delegate);
 	return this;
     }
 
-    public <E> BeanBasedWhereBuilder and(E property, BeanBasedWhereBuilder other) {
+    public BeanBasedWhereBuilder and(Object property, BeanBasedWhereBuilder other) {
 	final Capture lastCapture = InvokationCapturer.getLastCapture();
 	delegate.and(getReferent(lastCapture), getPropertyName(lastCapture), other.delegate);
 	return this;
     }
 
+    public <T> BeanBasedWhereBuilder or(Getter<T, ?> getter, BeanBasedWhereBuilder other) {
+	final Capture capture = BeanBasedMatcher.getCapture(getter);
+	delegate.or(getReferent(capture), getPropertyName(capture), other.delegate);
+	return this;
+    }
+
+    public <T> BeanBasedWhereBuilder and(Getter<T, ?> getter, BeanBasedWhereBuilder other) {
+	final Capture capture = BeanBasedMatcher.getCapture(getter);
+	delegate.and(getReferent(capture), getPropertyName(capture), other.delegate);
+	return this;
+    }
+
     @Override
     public String build(ParameterBinding bindings) {
 	return delegate.build(bindings);
@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Copyright (c) 2018, Xavier Miret Andres <xavier.mires@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package org.matcher.bean;
+
+import java.util.Arrays;
+
+import org.matcher.bean.InvokationCapturer.Capture;
+
+/**
+ * A stack of matcher invokation captures pending to be consumed by builder expressions.
+ * <p>
+ * The current thread always captures into its innermost scope. An implicit scope is created on the first capture and
+ * released as soon as it is drained, explicit scopes are obtained through {@link InvokationCapturer#openScope()} and
+ * meant to be used in a try-with-resources block.
+ * 
+ * <pre>
+ * try (CaptureScope scope = InvokationCapturer.openScope()) {
+ *     matcher.findAny(Person.class, matching(person.getName(), eq(&quot;Xiermires&quot;)));
+ * }
+ * </pre>
+ */
+public class CaptureScope implements AutoCloseable {
+
+    static final int DEFAULT_CAPACITY = 16;
+
+    private Capture[] captures;
+    private final CaptureScope previous;
+    private final boolean explicit;
+
+    private int size = 0;
+    private boolean closed = false;
+
+    CaptureScope(int capacity, CaptureScope previous, boolean explicit) {
+	if (capacity <= 0) {
+	    throw new IllegalArgumentException("Capacity must be positive.");
+	}
+	this.captures = new Capture[capacity];
+	this.previous = previous;
+	this.explicit = explicit;
+    }
+
+    void push(Capture capture) {
+	if (closed) {
+	    throw new IllegalStateException("Capture scope already closed.");
+	}
+	if (size == captures.length) {
+	    captures = Arrays.copyOf(captures, size * 2);
+	}
+	captures[size++] = capture;
+    }
+
+    Capture pop() {
+	if (size == 0) {
+	    return null;
+	}
+	final Capture capture = captures[--size];
+	captures[size] = null;
+	return capture;
+    }
+
+    int clear() {
+	final int leftovers = size;
+	while (size > 0) {
+	    captures[--size] = null;
+	}
+	return leftovers;
+    }
+
+    CaptureScope getPrevious() {
+	return previous;
+    }
+
+    boolean isExplicit() {
+	return explicit;
+    }
+
+    /**
+     * Returns how many captures are pending to be consumed.
+     */
+    public int size() {
+	return size;
+    }
+
+    public boolean isEmpty() {
+	return size == 0;
+    }
+
+    /**
+     * Releases this scope from the current thread.
+     * 
+     * @throws IllegalStateException
+     *             if any capture was left unconsumed.
+     */
+    @Override
+    public void close() {
+	if (closed) {
+	    return;
+	}
+	closed = true;
+	final int leftovers = clear();
+	if (explicit) {
+	    InvokationCapturer.close(this);
+	}
+	if (leftovers > 0) {
+	    throw new IllegalStateException(leftovers
+		    + " leftover captures, a matcher getter was invoked without a following builder expression.");
+	}
+    }
+}
@@ -22,13 +22,9 @@
 package org.matcher.bean;
 
 import java.lang.reflect.Method;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Deque;
 import java.util.List;
 import java.util.Map;
-import java.util.Observable;
-import java.util.Observer;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Predicate;
 
@@ -38,22 +34,11 @@ import javassist.util.proxy.ProxyObject;
 
 public class InvokationCapturer
 {
-    private static final Map<Class<?>, Class<?>> proxy2Class = new ConcurrentHashMap<>();
-    private static final ThreadLocal<Deque<Capture>> threadCaptures = new ThreadLocal<>();
+    private static final Map<Class<?>, Class<?>> proxyClasses = new ConcurrentHashMap<>();
+    private static final ThreadLocal<CaptureScope> threadScope = new ThreadLocal<>();
 
-    private static final Observer captureObserver = new Observer()
-    {
-        @Override
-        public void update(Observable o, Object arg)
-        {
-            Deque<Capture> deque = threadCaptures.get();
-            if (deque == null) {
-                deque = new ArrayDeque<>();
-                threadCaptures.set(deque);
-            }
-            deque.push((Capture) arg);
-        }
-    };
+    // captures are routed through the thread scope, hence a single stateless handler serves every proxy
+    private static final MethodHandler captureHandler = new CapturingInvokation();
 
     /**
      * Returns an instance of a class which might be used to match {@link Statements}.
@@ -61,16 +46,11 @@ public class InvokationCapturer
     @SuppressWarnings("unchecked")
     public static <T> T capturer(Class<T> clazz, Predicate<Method> filter)
     {
-        final ProxyFactory pf = new ProxyFactory();
-        pf.setSuperclass(clazz);
-        pf.setFilter(m -> filter.test(m));
-        final Class<?> instance = pf.createClass();
+        final Class<?> instance = proxyClass(clazz, filter);
         try
         {
             final T newInstance = (T) instance.newInstance();
-            ((ProxyObject) newInstance).setHandler(new ObservableInvokation());
-            proxy2Class.put(newInstance.getClass(), clazz);
-            observe(newInstance);
+            ((ProxyObject) newInstance).setHandler(captureHandler);
             return newInstance;
         }
         catch (InstantiationException | IllegalAccessException e)
@@ -79,52 +59,132 @@ public class InvokationCapturer
         }
     }
 
-    @SuppressWarnings("unchecked")
-    private static <T> Class<T> observe(T t)
+    /**
+     * Returns the proxy class capturing the {@code filter} methods of {@code clazz}, generating it on first use.
+     * <p>
+     * Proxy classes are cached per class, hence a class must always be captured using the same filter.
+     */
+    public static Class<?> proxyClass(Class<?> clazz, Predicate<Method> filter)
+    {
+        return proxyClasses.computeIfAbsent(clazz, c -> {
+            final ProxyFactory pf = new ProxyFactory();
+            pf.setSuperclass(c);
+            pf.setFilter(m -> filter.test(m));
+            return pf.createClass();
+        });
+    }
+
+    /**
+     * Opens an explicit capture scope bound to the current thread until closed.
+     * <p>
+     * Scopes can be nested, closing a scope restores the previous one. Closing a scope which still holds captures not
+     * consumed by any builder expression discards them and fails with an {@link IllegalStateException}.
+     */
+    public static CaptureScope openScope()
+    {
+        return openScope(CaptureScope.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * see {@link #openScope()}, the scope initially holding up to {@code capacity} captures before growing.
+     */
+    public static CaptureScope openScope(int capacity)
+    {
+        final CaptureScope scope = new CaptureScope(capacity, threadScope.get(), true);
+        threadScope.set(scope);
+        return scope;
+    }
+
+    /**
+     * Closes the implicit scope of the current thread, if any.
+     * <p>
+     * Builder expressions consume their captures as soon as they are created, hence any capture remaining once a
+     * query is built comes from a getter invoked without a following builder expression. Explicit scopes are left
+     * untouched, they report their leftovers when closed.
+     * 
+     * @throws IllegalStateException
+     *             if the implicit scope held leftover captures, which are discarded.
+     */
+    public static void closeImplicitScope()
+    {
+        final CaptureScope scope = threadScope.get();
+        if (scope != null && !scope.isExplicit())
+        {
+            threadScope.remove();
+            scope.close();
+        }
+    }
+
+    public static Capture getLastCapture()
+    {
+        final CaptureScope scope = threadScope.get();
+        if (scope == null)
+        {
+            return null;
+        }
+        final Capture capture = scope.pop();
+        if (scope.isEmpty() && !scope.isExplicit())
+        {
+            // drained, don't keep an implicit scope per (pooled or virtual) thread
+            threadScope.remove();
+        }
+        return capture;
+    }
+
+    public static List<Capture> getLastCaptures(int n)
     {
-        if (t instanceof ProxyObject && proxy2Class.containsKey(t.getClass()))
+        final List<Capture> captures = new ArrayList<>(n);
+        for (int i = 0; i < n; i++)
         {
-            final MethodHandler mh = ((ProxyObject) t).getHandler();
-            if (mh instanceof ObservableInvokation)
+            final Capture last = getLastCapture();
+            if (last != null)
             {
-                ((ObservableInvokation) mh).addObserver(captureObserver);
-                return (Class<T>) proxy2Class.get(t.getClass());
+                captures.add(last);
             }
         }
-        throw new RuntimeException("Must be instantiated with EntityMatcher#matcher()");
+        return captures;
     }
 
-    public static Capture getLastCapture()
+    static void capture(Capture capture)
     {
-        final Deque<Capture> captures = threadCaptures.get();
-        return captures.isEmpty() ? null : captures.pop();
+        CaptureScope scope = threadScope.get();
+        if (scope == null)
+        {
+            scope = new CaptureScope(CaptureScope.DEFAULT_CAPACITY, null, false);
+            threadScope.set(scope);
+        }
+        scope.push(capture);
     }
-    
-    public static List<Capture> getLastCaptures(int n) {
-	final List<Capture> captures = new ArrayList<>();
-	for (int i=0; i<n;i++) {
-	    final Capture last = getLastCapture();
-	    if (last != null) {
-		captures.add(last);
-	    }
-	}
-	return captures;
+
+    static void close(CaptureScope scope)
+    {
+        if (threadScope.get() != scope)
+        {
+            throw new IllegalStateException("Capture scopes must be closed in the thread and order they were opened");
+        }
+        if (scope.getPrevious() == null)
+        {
+            threadScope.remove();
+        }
+        else
+        {
+            threadScope.set(scope.getPrevious());
+        }
     }
 
-    static class ObservableInvokation extends Observable implements MethodHandler
+    static class CapturingInvokation implements MethodHandler
     {
         @Override
         public Object invoke(Object self, Method thisMethod, Method proceed, Object[] args) throws Throwable
         {
-            setChanged();
-            notifyObservers(new Capture(thisMethod));
+            capture(new Capture(thisMethod));
             return proceed.invoke(self, args);
         }
     }
 
     public static class Capture
     {
-        Method method;
+        final Method method;
 
         Capture(Method method)
         {
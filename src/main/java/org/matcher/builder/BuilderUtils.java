@@ -21,6 +21,13 @@
  *******************************************************************************/
 package org.matcher.builder;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import org.matcher.expression.ConstantExpression;
+import org.matcher.expression.Expression;
+import org.matcher.expression.FunctionExpression;
+import org.matcher.util.Node;
 
 public class BuilderUtils {
 
@@ -50,4 +57,28 @@ public class BuilderUtils {
 		    "Class '" + clazz.getSimpleName() + "' doesn't contain field named '" + fieldName + "'.");
 	}
     }
+
+    /**
+     * Returns the columns selected by the {@code selectBuilder}, a column without property being a whole entity.
+     */
+    public static List<Expression> getColumns(ClauseBuilder<?> selectBuilder) {
+	final List<Expression> columns = new ArrayList<>();
+	for (Expression expression : selectBuilder.getExpressions()) {
+	    addColumns(expression, columns);
+	}
+	return columns;
+    }
+
+    private static void addColumns(Expression expression, List<Expression> columns) {
+	if (expression instanceof ConstantExpression) {
+	    return;
+	}
+	if (!expression.hasChildren() || expression instanceof FunctionExpression) {
+	    columns.add(expression);
+	} else {
+	    for (Node<Expression> child : expression.getChildren()) {
+		addColumns(child.getData(), columns);
+	    }
+	}
+    }
 }
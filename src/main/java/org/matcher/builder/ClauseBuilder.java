@@ -73,6 +73,14 @@ public abstract class ClauseBuilder<Builder extends ClauseBuilder<Builder>> {
 	this.nextClause = nextClause;
     }
 
+    public ClauseBuilder<?> getPreviousClause() {
+	return previousClause;
+    }
+
+    public ClauseBuilder<?> getNextClause() {
+	return nextClause;
+    }
+
     public Class<?> getLeadingReferent() {
 	return leadingReferent;
     }
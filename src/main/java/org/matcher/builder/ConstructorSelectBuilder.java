@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * Copyright (c) 2018, Xavier Miret Andres <xavier.mires@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package org.matcher.builder;
+
+import static org.matcher.builder.BuilderUtils.getColumns;
+import static org.matcher.expression.Expressions.AVG;
+import static org.matcher.expression.Expressions.COUNT;
+import static org.matcher.expression.Expressions.DISTINCT;
+import static org.matcher.expression.Expressions.MAX;
+import static org.matcher.expression.Expressions.MIN;
+
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.metamodel.Metamodel;
+
+import org.matcher.expression.Expression;
+import org.matcher.expression.FunctionExpression;
+
+/**
+ * A select clause building an object of type {@code D} per row out of the columns selected from {@code T}, through a
+ * jpql constructor expression.
+ * <p>
+ * i.e. {@code selection(TestClass.class, "foo", "bar").into(FooBar.class)} translates as
+ * {@code SELECT NEW org.matcher.FooBar(testclass.foo, testclass.bar)}.
+ * <p>
+ * The built objects are never managed, so reading them doesn't add anything to the persistence context. The
+ * {@code D} constructor is validated against the selected columns when the query is created.
+ */
+public class ConstructorSelectBuilder<D, T> extends SelectBuilder<T, ConstructorSelectBuilder<D, T>> {
+
+    private final Class<D> constructedType;
+
+    public ConstructorSelectBuilder(Class<D> constructedType, SelectBuilder<T, ?> selectBuilder) {
+	super(selectBuilder.getLeadingReferent(), null);
+	this.constructedType = constructedType;
+	getExpressions().addAll(selectBuilder.getExpressions());
+    }
+
+    @Override
+    protected ConstructorSelectBuilder<D, T> getThis() {
+	return this;
+    }
+
+    /**
+     * Returns the type built per row, the leading referent being the entity the columns belong to by default.
+     */
+    public Class<D> getConstructedType() {
+	return constructedType;
+    }
+
+    /**
+     * Returns the constructor accepting the selected columns, their types resolved through the {@code metamodel}.
+     * 
+     * @throws IllegalArgumentException
+     *             if there is no such constructor.
+     */
+    public Constructor<D> getConstructor(Metamodel metamodel) {
+	return DtoConstructors.resolve(constructedType, getColumnTypes(metamodel));
+    }
+
+    @Override
+    protected String getPrefix() {
+	return "SELECT NEW " + constructedType.getName() + "(";
+    }
+
+    @Override
+    protected String getSuffix() {
+	return ")";
+    }
+
+    /**
+     * Returns the java type of each selected column, or null if it depends on the database (i.e. a sum).
+     */
+    private List<Class<?>> getColumnTypes(Metamodel metamodel) {
+	final List<Class<?>> types = new ArrayList<>();
+	for (Expression column : getColumns(this)) {
+	    types.add(getColumnType(metamodel, column));
+	}
+	if (types.isEmpty()) {
+	    throw new IllegalArgumentException(
+		    "Nothing selected to construct '" + constructedType.getSimpleName() + "'.");
+	}
+	return types;
+    }
+
+    private Class<?> getColumnType(Metamodel metamodel, Expression column) {
+	if (!(column instanceof FunctionExpression)) {
+	    return getPropertyType(metamodel, column);
+	}
+	switch (column.getOperator()) {
+	case COUNT:
+	    return Long.class;
+	case AVG:
+	    return Double.class;
+	case DISTINCT:
+	case MIN:
+	case MAX:
+	    // keep the type of a plain property
+	    return column.hasChildren() ? null : getPropertyType(metamodel, column);
+	default:
+	    return null;
+	}
+    }
+
+    private Class<?> getPropertyType(Metamodel metamodel, Expression expression) {
+	final Class<?> referent = expression.getReferent() != null ? expression.getReferent() : getLeadingReferent();
+	if (expression.getProperty() == null) {
+	    return referent;
+	}
+	try {
+	    // inherited attributes included
+	    return metamodel.managedType(referent).getAttribute(expression.getProperty()).getJavaType();
+	} catch (IllegalArgumentException e) {
+	    throw new IllegalArgumentException(//
+		    "Class '" + referent.getSimpleName() + "' doesn't contain attribute named '"
+			    + expression.getProperty() + "'.", e);
+	}
+    }
+}
@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright (c) 2018, Xavier Miret Andres <xavier.mires@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package org.matcher.builder;
+
+import java.lang.reflect.Constructor;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.common.primitives.Primitives;
+
+/**
+ * Resolves and caches the constructors of the types built by constructor expressions, by selected column types.
+ */
+class DtoConstructors {
+
+    private static final ClassValue<Map<List<Class<?>>, Constructor<?>>> constructors = new ClassValue<Map<List<Class<?>>, Constructor<?>>>() {
+	@Override
+	protected Map<List<Class<?>>, Constructor<?>> computeValue(Class<?> type) {
+	    return new ConcurrentHashMap<>();
+	}
+    };
+
+    /**
+     * Returns the public constructor of {@code type} accepting the {@code columnTypes}, a null column type accepting
+     * any parameter.
+     */
+    @SuppressWarnings("unchecked")
+    static <D> Constructor<D> resolve(Class<D> type, List<Class<?>> columnTypes) {
+	return (Constructor<D>) constructors.get(type).computeIfAbsent(columnTypes, key -> find(type, key));
+    }
+
+    private static Constructor<?> find(Class<?> type, List<Class<?>> columnTypes) {
+	for (Constructor<?> constructor : type.getConstructors()) {
+	    if (accepts(constructor.getParameterTypes(), columnTypes)) {
+		return constructor;
+	    }
+	}
+	throw new IllegalArgumentException("Class '" + type.getSimpleName() + "' has no public constructor accepting "
+		+ Arrays.toString(columnTypes.toArray()) + ".");
+    }
+
+    private static boolean accepts(Class<?>[] parameterTypes, List<Class<?>> columnTypes) {
+	if (parameterTypes.length != columnTypes.size()) {
+	    return false;
+	}
+	for (int i = 0; i < parameterTypes.length; i++) {
+	    final Class<?> columnType = columnTypes.get(i);
+	    if (columnType != null
+		    && !Primitives.wrap(parameterTypes[i]).isAssignableFrom(Primitives.wrap(columnType))) {
+		return false;
+	    }
+	}
+	return true;
+    }
+}
@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright (c) 2018, Xavier Miret Andres <xavier.mires@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package org.matcher.builder;
+
+import static org.matcher.expression.Expressions.AND;
+import static org.matcher.expression.Expressions.CLOSE;
+import static org.matcher.expression.Expressions.EQUALS;
+import static org.matcher.expression.Expressions.GREATER_THAN;
+import static org.matcher.expression.Expressions.LESSER_THAN;
+import static org.matcher.expression.Expressions.NOT_EQUALS;
+import static org.matcher.expression.Expressions.OPEN;
+import static org.matcher.expression.Expressions.OR;
+
+import java.util.List;
+
+import org.matcher.expression.ConstantExpression;
+import org.matcher.expression.Expression;
+import org.matcher.expression.QualifierExpression;
+
+/**
+ * A where clause restricting another one to the rows sorted after a given key.
+ * <p>
+ * The row comparison {@code (a, b) > (x, y)} is expanded as {@code a > x OR ( a = x AND b > y )}, since jpql doesn't
+ * support row value constructors.
+ */
+class KeysetWhereBuilder extends WhereBuilder<KeysetWhereBuilder> {
+
+    private static final ConstantExpression AND_EXPRESSION = new ConstantExpression(AND);
+    private static final ConstantExpression OR_EXPRESSION = new ConstantExpression(OR);
+
+    KeysetWhereBuilder(ClauseBuilder<?> whereBuilder, Class<?> referent, List<Expression> sortExpressions,
+	    Object[] lastKey) {
+	super(null, null);
+
+	if (!whereBuilder.getExpressions().isEmpty()) {
+	    // the shared expressions lose their leading referent otherwise
+	    whereBuilder.overwriteNullReferenceAndProperties(whereBuilder.getLeadingReferent(),
+		    whereBuilder.getLeadingProperty());
+	    getExpressions().add(OPEN);
+	    getExpressions().addAll(whereBuilder.getExpressions());
+	    getExpressions().add(CLOSE);
+	    getExpressions().add(AND_EXPRESSION);
+	}
+
+	getExpressions().add(OPEN);
+	for (int i = 0; i < sortExpressions.size(); i++) {
+	    if (i > 0) {
+		getExpressions().add(OR_EXPRESSION);
+	    }
+	    getExpressions().add(OPEN);
+	    for (int j = 0; j < i; j++) {
+		getExpressions().add(qualifier(EQUALS, NOT_EQUALS, sortExpressions.get(j), referent, lastKey[j]));
+		getExpressions().add(AND_EXPRESSION);
+	    }
+	    getExpressions().add(qualifier(GREATER_THAN, LESSER_THAN, sortExpressions.get(i), referent, lastKey[i]));
+	    getExpressions().add(CLOSE);
+	}
+	getExpressions().add(CLOSE);
+    }
+
+    private static Expression qualifier(String affirmed, String negated, Expression sortExpression,
+	    Class<?> referent, Object value) {
+	if (value == null) {
+	    throw new IllegalArgumentException("Keyset pagination requires non null sort keys.");
+	}
+	final Expression expression = new QualifierExpression<Object>(affirmed, negated, value);
+	expression.setReferent(sortExpression.getReferent() != null ? sortExpression.getReferent() : referent);
+	expression.setProperty(sortExpression.getProperty());
+	return expression;
+    }
+
+    @Override
+    protected KeysetWhereBuilder getThis() {
+	return this;
+    }
+}
@@ -21,8 +21,19 @@
  *******************************************************************************/
 package org.matcher.builder;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import org.matcher.expression.ConstantExpression;
+import org.matcher.expression.Expression;
+import org.matcher.parameter.ParameterBinding;
+import org.matcher.util.Node;
+
 public class OrderByBuilder<T> extends HavingBuilder<T> {
 
+    private Object[] lastKey = null;
+    private boolean nullsFirst = false;
+
     public OrderByBuilder(Class<T> leadingReferent, String leadingProperty) {
 	super(leadingReferent, leadingProperty);
     }
@@ -41,4 +52,100 @@ public class OrderByBuilder<T> extends HavingBuilder<T> {
     protected String getPrefix() {
 	return "ORDER BY ";
     }
+
+    /**
+     * Seeks the rows sorted after the one with the {@code lastKey} sort values (keyset pagination).
+     * <p>
+     * i.e. {@code orderBy("foo", "bar").after(5, "Hello")} restricts the query to {@code ?.foo > 5 OR ( ?.foo = 5 AND
+     * ?.bar > 'Hello' )}.
+     */
+    public OrderByBuilder<T> after(Object... lastKey) {
+	this.lastKey = lastKey == null || lastKey.length == 0 ? null : lastKey;
+	return this;
+    }
+
+    public Object[] getLastKey() {
+	return lastKey;
+    }
+
+    /**
+     * Renders every sort property with {@code NULLS FIRST}, instead of leaving the null ordering to the database.
+     * <p>
+     * i.e. {@code orderBy("foo", "bar").nullsFirst()} translates as {@code ORDER BY ?.foo NULLS FIRST, ?.bar NULLS
+     * FIRST}. Only sorting by properties is supported.
+     */
+    public OrderByBuilder<T> nullsFirst() {
+	this.nullsFirst = true;
+	return this;
+    }
+
+    /**
+     * Returns a copy of this builder rendering nulls first, see {@link #nullsFirst()}. This builder is not modified.
+     */
+    public OrderByBuilder<T> withNullsFirst() {
+	@SuppressWarnings("unchecked")
+	final OrderByBuilder<T> copy = new OrderByBuilder<>((Class<T>) getLeadingReferent(), getLeadingProperty());
+	copy.getExpressions().addAll(getExpressions());
+	copy.setPreviousClause(getPreviousClause());
+	copy.setNextClause(getNextClause());
+	copy.lastKey = lastKey;
+	return copy.nullsFirst();
+    }
+
+    public boolean isNullsFirst() {
+	return nullsFirst;
+    }
+
+    @Override
+    protected void parseExpressions(StringBuilder appender, ParameterBinding bindings) {
+	if (!nullsFirst) {
+	    super.parseExpressions(appender, bindings);
+	    return;
+	}
+	final List<Expression> sortExpressions = getSortExpressions();
+	for (int i = 0; i < sortExpressions.size(); i++) {
+	    if (i > 0) {
+		appender.append(", ");
+	    }
+	    appender.append(sortExpressions.get(i).resolve(bindings)).append(" NULLS FIRST");
+	}
+    }
+
+    /**
+     * Returns the property expressions this builder sorts by.
+     */
+    public List<Expression> getSortExpressions() {
+	final List<Expression> sortExpressions = new ArrayList<>();
+	for (Expression expression : getExpressions()) {
+	    for (Node<Expression> child : expression.getChildren()) {
+		final Expression sortExpression = child.getData();
+		if (sortExpression instanceof ConstantExpression) {
+		    continue;
+		}
+		if (sortExpression.hasChildren() || sortExpression.getProperty() == null) {
+		    throw new IllegalStateException("Keyset pagination requires sorting by properties.");
+		}
+		sortExpressions.add(sortExpression);
+	    }
+	}
+	return sortExpressions;
+    }
+
+    /**
+     * Restricts the {@code whereBuilder} to the rows sorted after the last key, if any.
+     * <p>
+     * The restriction is a new builder sharing the {@code whereBuilder} expressions, which are bound to its leading
+     * referent and property as rendering it would do. The {@code whereBuilder} itself is not restricted.
+     */
+    public ClauseBuilder<?> seek(ClauseBuilder<?> whereBuilder) {
+	if (lastKey == null) {
+	    return whereBuilder;
+	}
+	final List<Expression> sortExpressions = getSortExpressions();
+	if (sortExpressions.size() != lastKey.length) {
+	    throw new IllegalArgumentException(
+		    "Expected " + sortExpressions.size() + " sort key values, got " + lastKey.length + ".");
+	}
+	return new KeysetWhereBuilder(whereBuilder, getLeadingReferent(), sortExpressions, lastKey);
+    }
 }
@@ -34,6 +34,15 @@ public abstract class SelectBuilder<T, E extends SelectBuilder<T, E>> extends Ty
 	return getType();
     }
 
+    /**
+     * Builds an object of type {@code type} per row out of the selected columns instead of returning them.
+     * <p>
+     * See {@link ConstructorSelectBuilder}.
+     */
+    public <D> ConstructorSelectBuilder<D, T> into(Class<D> type) {
+	return new ConstructorSelectBuilder<>(type, this);
+    }
+
     @Override
     protected String getPrefix() {
 	return "SELECT ";
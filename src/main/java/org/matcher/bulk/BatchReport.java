@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * Copyright (c) 2018, Xavier Miret Andres <xavier.mires@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package org.matcher.bulk;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The outcome of a batched write: how many entities were written, in how many batches and how long it took.
+ */
+public class BatchReport {
+
+    private final long count;
+    private final long batches;
+    private final long elapsedNanos;
+
+    public BatchReport(long count, long batches, long elapsedNanos) {
+	this.count = count;
+	this.batches = batches;
+	this.elapsedNanos = elapsedNanos;
+    }
+
+    public long getCount() {
+	return count;
+    }
+
+    public long getBatches() {
+	return batches;
+    }
+
+    public long getElapsed(TimeUnit unit) {
+	return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the written entities per second.
+     */
+    public double getThroughput() {
+	return elapsedNanos == 0 ? 0 : count * 1e9 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+	return String.format("%d entities in %d batches, %d ms (%.1f/s)", count, batches,
+		getElapsed(TimeUnit.MILLISECONDS), getThroughput());
+    }
+}
@@ -0,0 +1,214 @@
+/*******************************************************************************
+ * Copyright (c) 2018, Xavier Miret Andres <xavier.mires@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package org.matcher.bulk;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+
+/**
+ * Writes large amounts of entities in batches, flushing and clearing the persistence context after each one so it
+ * doesn't grow unbounded.
+ * <p>
+ * JDBC batching itself is a persistence unit setting ({@value #JDBC_BATCH_SIZE}), hibernate doesn't allow changing it
+ * per entity manager. See {@link #jdbcBatchingProperties(int)}.
+ */
+public class BatchWriter {
+
+    public static final String JDBC_BATCH_SIZE = "hibernate.jdbc.batch_size";
+
+    private static final int DEFAULT_BATCH_SIZE = 50;
+
+    /**
+     * Returns the persistence unit properties enabling JDBC batches of {@code batchSize} statements, to be passed on
+     * to the entity manager factory creation.
+     */
+    public static Map<String, Object> jdbcBatchingProperties(int batchSize) {
+	final Map<String, Object> properties = new HashMap<>();
+	properties.put(JDBC_BATCH_SIZE, String.valueOf(batchSize));
+	// groups statements by entity type, otherwise interleaved types break the batches
+	properties.put("hibernate.order_inserts", "true");
+	properties.put("hibernate.order_updates", "true");
+	return properties;
+    }
+
+    /**
+     * Returns the JDBC batch size the {@code entityManagerFactory} is configured with, or a default one.
+     */
+    public static int getBatchSize(EntityManagerFactory entityManagerFactory) {
+	final Object batchSize = entityManagerFactory.getProperties().get(JDBC_BATCH_SIZE);
+	try {
+	    return batchSize == null ? DEFAULT_BATCH_SIZE : Integer.parseInt(batchSize.toString().trim());
+	} catch (NumberFormatException e) {
+	    return DEFAULT_BATCH_SIZE;
+	}
+    }
+
+    /**
+     * Writes the {@code entities} with the {@code entityManager}, flushing and clearing it every {@code batchSize}
+     * entities.
+     * <p>
+     * The write joins the active transaction, or runs in its own one if there is none. Clearing detaches any other
+     * entity managed by the {@code entityManager}.
+     */
+    public static BatchReport write( //
+	    EntityManager entityManager, //
+	    Iterable<?> entities, //
+	    int batchSize, //
+	    BiConsumer<EntityManager, Object> operation) {
+
+	checkBatchSize(batchSize);
+	final long start = System.nanoTime();
+	final EntityTransaction transaction = entityManager.getTransaction();
+	final boolean own = !transaction.isActive();
+	if (own) {
+	    transaction.begin();
+	}
+
+	long count = 0;
+	long batches = 0;
+	try {
+	    for (Object entity : entities) {
+		operation.accept(entityManager, entity);
+		if (++count % batchSize == 0) {
+		    entityManager.flush();
+		    entityManager.clear();
+		    batches++;
+		}
+	    }
+	    if (count % batchSize != 0) {
+		entityManager.flush();
+		entityManager.clear();
+		batches++;
+	    }
+	    if (own) {
+		transaction.commit();
+	    }
+	} catch (RuntimeException e) {
+	    if (own && transaction.isActive()) {
+		transaction.rollback();
+	    }
+	    throw e;
+	}
+	return new BatchReport(count, batches, System.nanoTime() - start);
+    }
+
+    /**
+     * Writes the {@code entities} with {@code parallelism} entity managers of the {@code entityManagerFactory},
+     * running on the {@code executor}. Each batch of {@code batchSize} entities is written in its own transaction.
+     * <p>
+     * If a batch fails the remaining ones are skipped and its exception thrown, already committed batches stay.
+     */
+    public static BatchReport write( //
+	    EntityManagerFactory entityManagerFactory, //
+	    Iterable<?> entities, //
+	    int batchSize, //
+	    int parallelism, //
+	    Executor executor, //
+	    BiConsumer<EntityManager, Object> operation) {
+
+	checkBatchSize(batchSize);
+	if (parallelism <= 0) {
+	    throw new IllegalArgumentException("Parallelism must be positive.");
+	}
+
+	final long start = System.nanoTime();
+	final Iterator<?> it = entities.iterator();
+	final AtomicLong count = new AtomicLong();
+	final AtomicLong batches = new AtomicLong();
+	final AtomicBoolean failed = new AtomicBoolean();
+
+	final List<CompletableFuture<Void>> workers = new ArrayList<>();
+	for (int i = 0; i < parallelism; i++) {
+	    workers.add(CompletableFuture.runAsync(() -> {
+		final EntityManager entityManager = entityManagerFactory.createEntityManager();
+		try {
+		    List<Object> batch;
+		    while (!failed.get() && !(batch = nextBatch(it, batchSize)).isEmpty()) {
+			writeBatch(entityManager, batch, operation);
+			count.addAndGet(batch.size());
+			batches.incrementAndGet();
+		    }
+		} catch (RuntimeException e) {
+		    failed.set(true);
+		    throw e;
+		} finally {
+		    entityManager.close();
+		}
+	    }, executor));
+	}
+
+	try {
+	    CompletableFuture.allOf(workers.toArray(new CompletableFuture<?>[workers.size()])).join();
+	} catch (CompletionException e) {
+	    throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+	}
+	return new BatchReport(count.get(), batches.get(), System.nanoTime() - start);
+    }
+
+    private static List<Object> nextBatch(Iterator<?> it, int batchSize) {
+	final List<Object> batch = new ArrayList<>(batchSize);
+	synchronized (it) {
+	    while (batch.size() < batchSize && it.hasNext()) {
+		batch.add(it.next());
+	    }
+	}
+	return batch;
+    }
+
+    private static void writeBatch(EntityManager entityManager, List<Object> batch,
+	    BiConsumer<EntityManager, Object> operation) {
+	final EntityTransaction transaction = entityManager.getTransaction();
+	transaction.begin();
+	try {
+	    for (Object entity : batch) {
+		operation.accept(entityManager, entity);
+	    }
+	    transaction.commit();
+	} catch (RuntimeException e) {
+	    if (transaction.isActive()) {
+		transaction.rollback();
+	    }
+	    throw e;
+	} finally {
+	    entityManager.clear();
+	}
+    }
+
+    private static void checkBatchSize(int batchSize) {
+	if (batchSize <= 0) {
+	    throw new IllegalArgumentException("Batch size must be positive.");
+	}
+    }
+}
@@ -0,0 +1,61 @@
+/*******************************************************************************
+ * Copyright (c) 2018, Xavier Miret Andres <xavier.mires@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package org.matcher.bulk;
+
+import static org.matcher.builder.BuilderUtils.getTableName;
+import static org.matcher.builder.BuilderUtils.toAlias;
+
+import java.util.function.Consumer;
+
+import javax.persistence.EntityManager;
+
+import org.matcher.parameter.ParameterBinding;
+
+/**
+ * A jpql {@code DELETE} statement.
+ * <p>
+ * i.e. {@code delete(TestClass.class).where(matching("foo", gt(2)))} translates as
+ * {@code DELETE FROM TestClass testclass WHERE testclass.foo > 2}.
+ * <p>
+ * As any bulk statement, deletes don't cascade to associations.
+ */
+public class BulkDelete<T> extends BulkStatement<T, BulkDelete<T>> {
+
+    public BulkDelete(EntityManager entityManager, Class<T> type) {
+	super(entityManager, type);
+    }
+
+    public BulkDelete(EntityManager entityManager, Class<T> type, Consumer<Class<?>> onExecuted) {
+	super(entityManager, type, onExecuted);
+    }
+
+    @Override
+    protected String renderStatement(ParameterBinding bindings) {
+	final String tableName = getTableName(type);
+	return "DELETE FROM " + tableName + " " + toAlias(tableName);
+    }
+
+    @Override
+    protected BulkDelete<T> getThis() {
+	return this;
+    }
+}
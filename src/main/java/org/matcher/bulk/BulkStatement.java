@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright (c) 2018, Xavier Miret Andres <xavier.mires@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package org.matcher.bulk;
+
+import java.util.Collections;
+import java.util.function.Consumer;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+import javax.persistence.Query;
+
+import org.matcher.BoundQuery;
+import org.matcher.bean.InvokationCapturer;
+import org.matcher.builder.ClauseBuilder;
+import org.matcher.builder.ClauseBuilder.ClauseType;
+import org.matcher.builder.TransparentBuilder;
+import org.matcher.parameter.ParameterBinding;
+import org.matcher.parameter.ParameterBindingImpl;
+import org.matcher.util.ManagedEntities;
+
+/**
+ * A jpql bulk statement over the rows of a single entity type, executed with {@link Query#executeUpdate()}.
+ * <p>
+ * Bulk statements bypass the persistence context: managed entities of the type keep their previous state unless the
+ * statement is {@link #evicting()}. The statement joins the active transaction, or runs in its own one if there is
+ * none.
+ */
+public abstract class BulkStatement<T, S extends BulkStatement<T, S>> {
+
+    private final EntityManager entityManager;
+    protected final Class<T> type;
+    private final Consumer<Class<?>> onExecuted;
+    private boolean evict;
+
+    protected BulkStatement(EntityManager entityManager, Class<T> type) {
+	this(entityManager, type, written -> {
+	});
+    }
+
+    /**
+     * The {@code onExecuted} listener is notified with the statement type once the statement is executed.
+     */
+    protected BulkStatement(EntityManager entityManager, Class<T> type, Consumer<Class<?>> onExecuted) {
+	this.entityManager = entityManager;
+	this.type = type;
+	this.onExecuted = onExecuted;
+    }
+
+    /**
+     * Detaches the managed entities of the statement type, and evicts them from the second level cache, once the
+     * statement is executed.
+     */
+    public S evicting() {
+	evict = true;
+	return getThis();
+    }
+
+    /**
+     * Executes the statement on the rows matching the {@code whereBuilder}, returning the number of affected rows.
+     */
+    public int where(ClauseBuilder<?> whereBuilder) {
+	if (whereBuilder.getClauseType() != ClauseType.WHERE) {
+	    throw new IllegalArgumentException("Expected a where clause, found " + whereBuilder.getClauseType() + ".");
+	}
+	return execute(render(whereBuilder));
+    }
+
+    /**
+     * Executes the statement on all rows, returning the number of affected rows.
+     */
+    public int all() {
+	return execute(render(TransparentBuilder.INSTANCE));
+    }
+
+    /**
+     * Renders the statement restricted to the rows matching the {@code whereBuilder}.
+     * <p>
+     * The {@code whereBuilder} can only refer to the statement type, jpql bulk statements don't allow joins.
+     */
+    public BoundQuery render(ClauseBuilder<?> whereBuilder) {
+	InvokationCapturer.closeImplicitScope();
+
+	whereBuilder.overwriteNullReferenceAndProperties(type, null);
+	for (Class<?> referent : whereBuilder.getReferents()) {
+	    if (!referent.equals(type)) {
+		throw new IllegalArgumentException("Bulk statements on '" + type.getSimpleName()
+			+ "' can't refer to '" + referent.getSimpleName() + "'.");
+	    }
+	}
+
+	final ParameterBinding bindings = new ParameterBindingImpl();
+	final StringBuilder statementBuilder = new StringBuilder();
+	statementBuilder.append(renderStatement(bindings));
+	statementBuilder.append(" ");
+	statementBuilder.append(whereBuilder.build(bindings));
+
+	final String statementTxt = statementBuilder.toString().replaceAll("\\s+", " ").trim();
+	return new BoundQuery(statementTxt, bindings, Collections.<Class<?>> singleton(type));
+    }
+
+    /**
+     * Renders the statement up to its where clause, binding its parameters in {@code bindings}.
+     */
+    protected abstract String renderStatement(ParameterBinding bindings);
+
+    protected abstract S getThis();
+
+    private int execute(BoundQuery statement) {
+	final Query query = entityManager.createQuery(statement.getText());
+	statement.getBindings().resolveParams(statement.getText(), query);
+
+	final EntityTransaction transaction = entityManager.getTransaction();
+	final boolean own = !transaction.isActive();
+	if (own) {
+	    transaction.begin();
+	}
+	final int updated;
+	try {
+	    updated = query.executeUpdate();
+	    if (own) {
+		transaction.commit();
+	    }
+	} catch (RuntimeException e) {
+	    if (own && transaction.isActive()) {
+		transaction.rollback();
+	    }
+	    throw e;
+	}
+
+	if (evict) {
+	    ManagedEntities.detachAll(entityManager, type);
+	    entityManager.getEntityManagerFactory().getCache().evict(type);
+	}
+	onExecuted.accept(type);
+	return updated;
+    }
+}
@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * Copyright (c) 2018, Xavier Miret Andres <xavier.mires@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package org.matcher.bulk;
+
+import static org.matcher.builder.BuilderUtils.aliasPlusColumn;
+import static org.matcher.builder.BuilderUtils.getTableName;
+import static org.matcher.builder.BuilderUtils.toAlias;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import javax.persistence.EntityManager;
+
+import org.matcher.parameter.ParameterBinding;
+
+/**
+ * A jpql {@code UPDATE} statement.
+ * <p>
+ * i.e. {@code update(TestClass.class).set("bar", "Hi").set("foo", plus(1)).where(matching("foo", gt(2)))} translates
+ * as {@code UPDATE TestClass testclass SET testclass.bar = ?0, testclass.foo = testclass.foo + ?1 WHERE testclass.foo
+ * > ?2}.
+ */
+public class BulkUpdate<T> extends BulkStatement<T, BulkUpdate<T>> {
+
+    private final Map<String, Object> assignments = new LinkedHashMap<>();
+
+    public BulkUpdate(EntityManager entityManager, Class<T> type) {
+	super(entityManager, type);
+    }
+
+    public BulkUpdate(EntityManager entityManager, Class<T> type, Consumer<Class<?>> onExecuted) {
+	super(entityManager, type, onExecuted);
+    }
+
+    /**
+     * Sets the {@code property} to the {@code value}, which can also be a {@link #plus(Number)} or
+     * {@link #minus(Number)} of its current one.
+     */
+    public BulkUpdate<T> set(String property, Object value) {
+	// validates the property
+	aliasPlusColumn(type, property);
+	assignments.put(property, value);
+	return this;
+    }
+
+    /**
+     * The current value of the property plus the {@code value}.
+     */
+    public static Increment plus(Number value) {
+	return new Increment(" + ", value);
+    }
+
+    /**
+     * The current value of the property minus the {@code value}.
+     */
+    public static Increment minus(Number value) {
+	return new Increment(" - ", value);
+    }
+
+    @Override
+    protected String renderStatement(ParameterBinding bindings) {
+	if (assignments.isEmpty()) {
+	    throw new IllegalStateException("No property set in the update of '" + type.getSimpleName() + "'.");
+	}
+
+	final String tableName = getTableName(type);
+	final StringBuilder statementBuilder = new StringBuilder();
+	statementBuilder.append("UPDATE ").append(tableName).append(" ").append(toAlias(tableName)).append(" SET ");
+	String separator = "";
+	for (Map.Entry<String, Object> assignment : assignments.entrySet()) {
+	    final String column = aliasPlusColumn(type, assignment.getKey());
+	    final Object value = assignment.getValue();
+	    statementBuilder.append(separator).append(column).append(" = ");
+	    if (value == null) {
+		statementBuilder.append("NULL");
+	    } else if (value instanceof Increment) {
+		final Increment increment = (Increment) value;
+		statementBuilder.append(column).append(increment.operator)
+			.append(bindings.createParam(increment.value));
+	    } else {
+		statementBuilder.append(bindings.createParam(value));
+	    }
+	    separator = ", ";
+	}
+	return statementBuilder.toString();
+    }
+
+    @Override
+    protected BulkUpdate<T> getThis() {
+	return this;
+    }
+
+    /**
+     * An arithmetic update relative to the current value of a property.
+     */
+    public static class Increment {
+
+	private final String operator;
+	private final Number value;
+
+	Increment(String operator, Number value) {
+	    if (value == null) {
+		throw new IllegalArgumentException("Increments can't be null.");
+	    }
+	    this.operator = operator;
+	    this.value = value;
+	}
+    }
+}
@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright (c) 2018, Xavier Miret Andres <xavier.mires@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package org.matcher.cache;
+
+import java.util.Set;
+import java.util.function.Consumer;
+
+import javax.persistence.EntityTransaction;
+
+/**
+ * A transaction invalidating the written entity types from the matcher caches once it completes, since other entity
+ * managers could have cached their previous state meanwhile.
+ */
+public class InvalidatingTransaction implements EntityTransaction {
+
+    private final EntityTransaction delegate;
+    private final Consumer<Class<?>> invalidator;
+    private final Set<Class<?>> writtenTypes;
+
+    /**
+     * The {@code writtenTypes} set is shared with the writer, and emptied once invalidated.
+     */
+    public InvalidatingTransaction(EntityTransaction delegate, Consumer<Class<?>> invalidator,
+	    Set<Class<?>> writtenTypes) {
+	this.delegate = delegate;
+	this.invalidator = invalidator;
+	this.writtenTypes = writtenTypes;
+    }
+
+    @Override
+    public void begin() {
+	delegate.begin();
+    }
+
+    @Override
+    public void commit() {
+	try {
+	    delegate.commit();
+	} finally {
+	    invalidate();
+	}
+    }
+
+    @Override
+    public void rollback() {
+	try {
+	    delegate.rollback();
+	} finally {
+	    invalidate();
+	}
+    }
+
+    @Override
+    public void setRollbackOnly() {
+	delegate.setRollbackOnly();
+    }
+
+    @Override
+    public boolean getRollbackOnly() {
+	return delegate.getRollbackOnly();
+    }
+
+    @Override
+    public boolean isActive() {
+	return delegate.isActive();
+    }
+
+    private void invalidate() {
+	synchronized (writtenTypes) {
+	    writtenTypes.forEach(invalidator);
+	    writtenTypes.clear();
+	}
+    }
+}
@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Copyright (c) 2018, Xavier Miret Andres <xavier.mires@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package org.matcher.cache;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.matcher.cache.ResultCache.QueryKey;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Remembers the unique queries which found no result, so that repeated probes for missing rows don't hit the
+ * database.
+ * <p>
+ * Misses are keyed as the {@link ResultCache} entries and evicted when the cache exceeds its maximum size or once their
+ * time to live elapses. An entity matcher using this cache forgets the misses of an entity type whenever it writes
+ * entities of that type, and again when its transaction completes. Rows inserted through other entity managers are
+ * only found once the misses expire.
+ */
+public class MissCache {
+
+    private final Cache<QueryKey, Boolean> cache;
+    private final AtomicLong invalidationCount = new AtomicLong();
+
+    public MissCache(long maxSize, long timeToLive, TimeUnit unit) {
+	this.cache = CacheBuilder.newBuilder() //
+		.maximumSize(maxSize) //
+		.expireAfterWrite(timeToLive, unit) //
+		.recordStats() //
+		.build();
+    }
+
+    /**
+     * Returns whether the {@code key} query is known to find no result.
+     */
+    public boolean isMiss(QueryKey key) {
+	return cache.getIfPresent(key) != null;
+    }
+
+    public void put(QueryKey key) {
+	cache.put(key, Boolean.TRUE);
+    }
+
+    /**
+     * Forgets the misses of the queries reading from the {@code type} entities, or any super type of them.
+     */
+    public void invalidate(Class<?> type) {
+	if (cache.asMap().keySet().removeIf(key -> key.readsFrom(type))) {
+	    invalidationCount.incrementAndGet();
+	}
+    }
+
+    public void invalidateAll() {
+	cache.invalidateAll();
+	invalidationCount.incrementAndGet();
+    }
+
+    public long getSize() {
+	return cache.size();
+    }
+
+    /**
+     * Returns the number of queries answered from the cache.
+     */
+    public long getHitCount() {
+	return cache.stats().hitCount();
+    }
+
+    /**
+     * Returns the number of entries evicted by size or time to live.
+     */
+    public long getEvictionCount() {
+	return cache.stats().evictionCount();
+    }
+
+    /**
+     * Returns the number of invalidations which removed any entry.
+     */
+    public long getInvalidationCount() {
+	return invalidationCount.get();
+    }
+}
@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * Copyright (c) 2018, Xavier Miret Andres <xavier.mires@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package org.matcher.cache;
+
+import java.util.List;
+
+import javax.persistence.NoResultException;
+import javax.persistence.TypedQuery;
+
+import org.matcher.BoundQuery;
+import org.matcher.cache.ResultCache.QueryKey;
+import org.matcher.option.MatcherOption;
+import org.matcher.util.TransformableTypedQuery;
+
+/**
+ * A typed query answering {@link #getSingleResult()} with a {@link NoResultException} when the {@link MissCache}
+ * knows it finds nothing, and recording the misses of the wrapped query otherwise.
+ */
+public class MissCachingTypedQuery<T> extends TransformableTypedQuery<T, T> {
+
+    private final TypedQuery<T> query;
+    private final BoundQuery boundQuery;
+    private final Class<T> returnType;
+    private final List<MatcherOption> options;
+    private final MissCache cache;
+
+    public MissCachingTypedQuery(TypedQuery<T> query, BoundQuery boundQuery, Class<T> returnType,
+	    List<MatcherOption> options, MissCache cache) {
+	super(query, result -> result);
+	this.query = query;
+	this.boundQuery = boundQuery;
+	this.returnType = returnType;
+	this.options = options;
+	this.cache = cache;
+    }
+
+    @Override
+    public T getSingleResult() {
+	final QueryKey key = QueryKey.of(boundQuery, returnType, query.getFirstResult(), query.getMaxResults(),
+		options);
+	if (cache.isMiss(key)) {
+	    throw new NoResultException("No entity found for query (cached).");
+	}
+	try {
+	    return query.getSingleResult();
+	} catch (NoResultException e) {
+	    cache.put(key);
+	    throw e;
+	}
+    }
+}
@@ -0,0 +1,198 @@
+/*******************************************************************************
+ * Copyright (c) 2018, Xavier Miret Andres <xavier.mires@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package org.matcher.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.matcher.BoundQuery;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Caches the results of the queries reading only from the cached entity types, i.e. reference tables.
+ * <p>
+ * Entries are keyed by query text, bound values, result type and paging, and evicted when the cache exceeds its
+ * maximum size or once their time to live elapses. An entity matcher using this cache invalidates the entries of an
+ * entity type whenever it persists, merges, removes or bulk updates entities of that type, and again when its
+ * transaction completes. Writes through other entity managers are only seen once the entries expire.
+ * <p>
+ * Cached results are detached and shared by all readers, which must not modify them.
+ */
+public class ResultCache {
+
+    private final Set<Class<?>> cachedTypes;
+    private final Cache<QueryKey, List<?>> cache;
+    private final AtomicLong invalidationCount = new AtomicLong();
+
+    public ResultCache(long maxSize, long timeToLive, TimeUnit unit, Class<?> cachedType, Class<?>... others) {
+	final Set<Class<?>> types = new HashSet<>(Arrays.asList(others));
+	types.add(cachedType);
+	this.cachedTypes = Collections.unmodifiableSet(types);
+	this.cache = CacheBuilder.newBuilder() //
+		.maximumSize(maxSize) //
+		.expireAfterWrite(timeToLive, unit) //
+		.recordStats() //
+		.build();
+    }
+
+    /**
+     * Returns whether queries reading from the {@code referents} are cached.
+     */
+    public boolean isCached(Collection<Class<?>> referents) {
+	return !referents.isEmpty() && cachedTypes.containsAll(referents);
+    }
+
+    /**
+     * Returns the cached results of the {@code key} query, loading them if absent.
+     */
+    public List<?> get(QueryKey key, Supplier<List<?>> loader) {
+	try {
+	    return cache.get(key, () -> Collections.unmodifiableList(loader.get()));
+	} catch (ExecutionException | UncheckedExecutionException e) {
+	    if (e.getCause() instanceof RuntimeException) {
+		throw (RuntimeException) e.getCause();
+	    }
+	    throw new IllegalStateException(e.getCause());
+	}
+    }
+
+    /**
+     * Invalidates the results of the queries reading from the {@code type} entities, or any super type of them.
+     */
+    public void invalidate(Class<?> type) {
+	if (cache.asMap().keySet().removeIf(key -> key.readsFrom(type))) {
+	    invalidationCount.incrementAndGet();
+	}
+    }
+
+    public void invalidateAll() {
+	cache.invalidateAll();
+	invalidationCount.incrementAndGet();
+    }
+
+    public Set<Class<?>> getCachedTypes() {
+	return cachedTypes;
+    }
+
+    public long getSize() {
+	return cache.size();
+    }
+
+    public long getHitCount() {
+	return cache.stats().hitCount();
+    }
+
+    public long getMissCount() {
+	return cache.stats().missCount();
+    }
+
+    /**
+     * Returns the number of entries evicted by size or time to live.
+     */
+    public long getEvictionCount() {
+	return cache.stats().evictionCount();
+    }
+
+    /**
+     * Returns the number of invalidations which removed any entry.
+     */
+    public long getInvalidationCount() {
+	return invalidationCount.get();
+    }
+
+    /**
+     * Identifies a query execution.
+     */
+    public static class QueryKey {
+
+	private final String text;
+	private final List<Object> bindings;
+	private final Set<Class<?>> referents;
+	private final Class<?> returnType;
+	private final int firstResult;
+	private final int maxResults;
+	private final List<?> options;
+
+	public QueryKey(String text, List<Object> bindings, Set<Class<?>> referents, Class<?> returnType,
+		int firstResult, int maxResults, List<?> options) {
+	    this.text = text;
+	    this.bindings = bindings;
+	    this.referents = referents;
+	    this.returnType = returnType;
+	    this.firstResult = firstResult;
+	    this.maxResults = maxResults;
+	    this.options = options;
+	}
+
+	/**
+	 * Returns the key of the {@code query} executed with the given paging and options.
+	 */
+	public static QueryKey of(BoundQuery query, Class<?> returnType, int firstResult, int maxResults,
+		List<?> options) {
+	    return new QueryKey(query.getText(), new ArrayList<>(query.getBindings().getBindings()),
+		    query.getReferents(), returnType, firstResult, maxResults, options);
+	}
+
+	boolean readsFrom(Class<?> type) {
+	    for (Class<?> referent : referents) {
+		if (referent.isAssignableFrom(type)) {
+		    return true;
+		}
+	    }
+	    return false;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+	    if (!(obj instanceof QueryKey)) {
+		return false;
+	    }
+	    final QueryKey other = (QueryKey) obj;
+	    return text.equals(other.text) && bindings.equals(other.bindings) && returnType == other.returnType
+		    && firstResult == other.firstResult && maxResults == other.maxResults
+		    && options.equals(other.options);
+	}
+
+	@Override
+	public int hashCode() {
+	    return Objects.hash(text, bindings, returnType, firstResult, maxResults, options);
+	}
+
+	@Override
+	public String toString() {
+	    return text + " " + bindings;
+	}
+    }
+}
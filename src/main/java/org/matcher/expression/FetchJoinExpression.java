@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright (c) 2018, Xavier Miret Andres <xavier.mires@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package org.matcher.expression;
+
+import static org.matcher.builder.BuilderUtils.aliasPlusColumn;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.Map;
+
+import org.matcher.parameter.ParameterBinding;
+
+/**
+ * Loads an association of a from clause referent together with it.
+ * <p>
+ * i.e. {@code new FetchJoinExpression(TestParent.class, "children")} translates as
+ * {@code LEFT JOIN FETCH testparent.children}, right after the {@code TestParent testparent} declaration.
+ */
+public class FetchJoinExpression extends Expression {
+
+    public FetchJoinExpression(Class<?> referent, String property) {
+	setReferent(referent);
+	setProperty(property);
+    }
+
+    /**
+     * Returns the type of the fetched entities, the element type for collection associations.
+     */
+    public Class<?> getFetchedType() {
+	final Field field;
+	try {
+	    field = getReferent().getDeclaredField(getProperty());
+	} catch (NoSuchFieldException e) {
+	    throw new IllegalArgumentException("Class '" + getReferent().getSimpleName()
+		    + "' doesn't contain field named '" + getProperty() + "'.");
+	}
+	final Type type = field.getGenericType();
+	if ((Collection.class.isAssignableFrom(field.getType()) || Map.class.isAssignableFrom(field.getType()))
+		&& type instanceof ParameterizedType) {
+	    // map associations fetch their values
+	    final Type[] arguments = ((ParameterizedType) type).getActualTypeArguments();
+	    final Type element = arguments[arguments.length - 1];
+	    if (element instanceof Class) {
+		return (Class<?>) element;
+	    }
+	}
+	return field.getType();
+    }
+
+    @Override
+    public String resolve(ParameterBinding bindings) {
+	return " LEFT JOIN FETCH " + aliasPlusColumn(getReferent(), getProperty());
+    }
+}
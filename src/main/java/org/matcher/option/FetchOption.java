@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright (c) 2018, Xavier Miret Andres <xavier.mires@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package org.matcher.option;
+
+import java.util.Objects;
+
+import javax.persistence.EntityGraph;
+import javax.persistence.Query;
+
+import org.matcher.expression.FetchJoinExpression;
+
+/**
+ * Loads associations together with the query results, instead of one query per result on first access.
+ * <p>
+ * i.e. {@code findAny(TestParent.class, matching("name", eq("A")), fetch("children"))} translates as
+ * {@code SELECT testparent FROM TestParent testparent LEFT JOIN FETCH testparent.children WHERE testparent.name = ?0}.
+ * Results duplicated by collection fetch joins are removed, so each root entity is returned once.
+ */
+public class FetchOption implements MatcherOption {
+
+    private final Class<?> referent;
+    private final String property;
+    private final EntityGraph<?> loadGraph;
+
+    private FetchOption(Class<?> referent, String property, EntityGraph<?> loadGraph) {
+	this.referent = referent;
+	this.property = property;
+	this.loadGraph = loadGraph;
+    }
+
+    /**
+     * Fetch joins the {@code property} association of the query leading referent.
+     */
+    public static FetchOption fetch(String property) {
+	return fetch(null, property);
+    }
+
+    /**
+     * Fetch joins the {@code property} association of the {@code referent}, which must be part of the query.
+     */
+    public static FetchOption fetch(Class<?> referent, String property) {
+	if (property == null) {
+	    throw new IllegalArgumentException("Fetched property can't be null.");
+	}
+	return new FetchOption(referent, property, null);
+    }
+
+    /**
+     * Applies the {@code entityGraph} as load graph: its attributes are loaded eagerly, the others as mapped.
+     */
+    public static FetchOption loadGraph(EntityGraph<?> entityGraph) {
+	if (entityGraph == null) {
+	    throw new IllegalArgumentException("Load graph can't be null.");
+	}
+	return new FetchOption(null, null, entityGraph);
+    }
+
+    public boolean isJoin() {
+	return property != null;
+    }
+
+    /**
+     * Returns the fetch join of this option rendered in the from clause.
+     */
+    public FetchJoinExpression toExpression() {
+	return new FetchJoinExpression(referent, property);
+    }
+
+    @Override
+    public void apply(Query query) {
+	if (loadGraph != null) {
+	    query.setHint("javax.persistence.loadgraph", loadGraph);
+	}
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+	if (!(obj instanceof FetchOption)) {
+	    return false;
+	}
+	final FetchOption other = (FetchOption) obj;
+	return Objects.equals(referent, other.referent) && Objects.equals(property, other.property)
+		&& Objects.equals(loadGraph, other.loadGraph);
+    }
+
+    @Override
+    public int hashCode() {
+	return Objects.hash(referent, property, loadGraph);
+    }
+
+    @Override
+    public String toString() {
+	return isJoin() ? "FETCH " + (referent == null ? "?" : referent.getSimpleName()) + "." + property
+		: "LOAD GRAPH " + loadGraph.getName();
+    }
+}
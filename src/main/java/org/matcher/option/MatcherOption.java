@@ -21,8 +21,17 @@
  *******************************************************************************/
 package org.matcher.option;
 
+import javax.persistence.Query;
+
 /**
- * General purpose marker to include matcher options
+ * General purpose matcher option, tuning how a query is executed without changing what it matches.
+ * <p>
+ * See {@link QueryOption} for the built-in ones.
  */
 public interface MatcherOption {
+
+    /**
+     * Applies this option to the {@code query} before it is executed.
+     */
+    void apply(Query query);
 }
@@ -0,0 +1,185 @@
+/*******************************************************************************
+ * Copyright (c) 2018, Xavier Miret Andres <xavier.mires@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package org.matcher.option;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.CacheRetrieveMode;
+import javax.persistence.CacheStoreMode;
+import javax.persistence.FlushModeType;
+import javax.persistence.LockModeType;
+import javax.persistence.Query;
+
+/**
+ * The query settings and hints exposed as matcher options.
+ * <p>
+ * i.e. {@code findAny(TestClass.class, matching("foo", gt(2)), fetchSize(500), readOnly(), timeout(2, SECONDS))}.
+ * <p>
+ * Options are applied in order, so a later option of the same kind overrides an earlier one. Fetch size and read
+ * only are hibernate hints, other providers ignore them.
+ */
+public class QueryOption implements MatcherOption {
+
+    public static enum Kind {
+	FETCH_SIZE, TIMEOUT, READ_ONLY, FLUSH_MODE, LOCK_MODE, CACHE_RETRIEVE_MODE, CACHE_STORE_MODE, MAX_RESULTS,
+	FIRST_RESULT;
+    }
+
+    private final Kind kind;
+    private final Object value;
+
+    private QueryOption(Kind kind, Object value) {
+	this.kind = kind;
+	this.value = value;
+    }
+
+    /**
+     * Rows fetched per database round trip.
+     */
+    public static QueryOption fetchSize(int fetchSize) {
+	if (fetchSize <= 0) {
+	    throw new IllegalArgumentException("Fetch size must be positive.");
+	}
+	return new QueryOption(Kind.FETCH_SIZE, fetchSize);
+    }
+
+    /**
+     * Time the query may run before it is cancelled, with millisecond precision.
+     */
+    public static QueryOption timeout(long timeout, TimeUnit unit) {
+	if (timeout < 0) {
+	    throw new IllegalArgumentException("Timeout can't be negative.");
+	}
+	return new QueryOption(Kind.TIMEOUT, Math.toIntExact(unit.toMillis(timeout)));
+    }
+
+    /**
+     * Loads the entities without the snapshots needed to detect their changes on flush, which are then ignored.
+     */
+    public static QueryOption readOnly() {
+	return new QueryOption(Kind.READ_ONLY, true);
+    }
+
+    public static QueryOption flushMode(FlushModeType flushMode) {
+	return new QueryOption(Kind.FLUSH_MODE, Objects.requireNonNull(flushMode));
+    }
+
+    public static QueryOption lockMode(LockModeType lockMode) {
+	return new QueryOption(Kind.LOCK_MODE, Objects.requireNonNull(lockMode));
+    }
+
+    /**
+     * Returns whether the {@code options} lock the rows, the last lock mode overriding the previous ones.
+     */
+    public static boolean isLocking(Iterable<? extends MatcherOption> options) {
+	Object lockMode = LockModeType.NONE;
+	for (MatcherOption option : options) {
+	    if (option instanceof QueryOption && ((QueryOption) option).kind == Kind.LOCK_MODE) {
+		lockMode = ((QueryOption) option).value;
+	    }
+	}
+	return lockMode != LockModeType.NONE;
+    }
+
+    public static QueryOption cacheRetrieveMode(CacheRetrieveMode retrieveMode) {
+	return new QueryOption(Kind.CACHE_RETRIEVE_MODE, Objects.requireNonNull(retrieveMode));
+    }
+
+    public static QueryOption cacheStoreMode(CacheStoreMode storeMode) {
+	return new QueryOption(Kind.CACHE_STORE_MODE, Objects.requireNonNull(storeMode));
+    }
+
+    public static QueryOption maxResults(int maxResults) {
+	if (maxResults < 0) {
+	    throw new IllegalArgumentException("Max results can't be negative.");
+	}
+	return new QueryOption(Kind.MAX_RESULTS, maxResults);
+    }
+
+    public static QueryOption firstResult(int firstResult) {
+	if (firstResult < 0) {
+	    throw new IllegalArgumentException("First result can't be negative.");
+	}
+	return new QueryOption(Kind.FIRST_RESULT, firstResult);
+    }
+
+    public Kind getKind() {
+	return kind;
+    }
+
+    public Object getValue() {
+	return value;
+    }
+
+    @Override
+    public void apply(Query query) {
+	switch (kind) {
+	case FETCH_SIZE:
+	    query.setHint("org.hibernate.fetchSize", value);
+	    break;
+	case TIMEOUT:
+	    query.setHint("javax.persistence.query.timeout", value);
+	    break;
+	case READ_ONLY:
+	    query.setHint("org.hibernate.readOnly", value);
+	    break;
+	case FLUSH_MODE:
+	    query.setFlushMode((FlushModeType) value);
+	    break;
+	case LOCK_MODE:
+	    query.setLockMode((LockModeType) value);
+	    break;
+	case CACHE_RETRIEVE_MODE:
+	    query.setHint("javax.persistence.cache.retrieveMode", value);
+	    break;
+	case CACHE_STORE_MODE:
+	    query.setHint("javax.persistence.cache.storeMode", value);
+	    break;
+	case MAX_RESULTS:
+	    query.setMaxResults((Integer) value);
+	    break;
+	case FIRST_RESULT:
+	    query.setFirstResult((Integer) value);
+	    break;
+	}
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+	if (!(obj instanceof QueryOption)) {
+	    return false;
+	}
+	final QueryOption other = (QueryOption) obj;
+	return kind == other.kind && value.equals(other.value);
+    }
+
+    @Override
+    public int hashCode() {
+	return 31 * kind.hashCode() + value.hashCode();
+    }
+
+    @Override
+    public String toString() {
+	return kind + "=" + value;
+    }
+}
@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright (c) 2018, Xavier Miret Andres <xavier.mires@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package org.matcher.page;
+
+import java.util.List;
+
+import org.matcher.builder.OrderByBuilder;
+
+/**
+ * A page of query results.
+ */
+public class Page<T> {
+
+    /**
+     * The total returned when the count is unknown.
+     */
+    public static final long UNKNOWN_TOTAL = -1;
+
+    private final List<T> content;
+    private final Object[] nextKey;
+    private final boolean hasNext;
+    private final long total;
+
+    /**
+     * A keyset page.
+     */
+    public Page(List<T> content, Object[] nextKey) {
+	this.content = content;
+	this.nextKey = nextKey;
+	this.hasNext = nextKey != null;
+	this.total = UNKNOWN_TOTAL;
+    }
+
+    /**
+     * An offset page.
+     */
+    public Page(List<T> content, boolean hasNext, long total) {
+	this.content = content;
+	this.nextKey = null;
+	this.hasNext = hasNext;
+	this.total = total;
+    }
+
+    public List<T> getContent() {
+	return content;
+    }
+
+    /**
+     * Returns the sort key values of this page last row, to be passed to {@link OrderByBuilder#after(Object...)} to
+     * seek the following page, or null if this is the last page or not a keyset page.
+     */
+    public Object[] getNextKey() {
+	return nextKey;
+    }
+
+    public boolean hasNext() {
+	return hasNext;
+    }
+
+    /**
+     * Returns the number of rows of all pages, or {@link #UNKNOWN_TOTAL} if not counted.
+     */
+    public long getTotal() {
+	return total;
+    }
+}
@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright (c) 2018, Xavier Miret Andres <xavier.mires@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package org.matcher.page;
+
+/**
+ * A request of the {@code page}-th page of {@code size} rows, zero based.
+ */
+public class PageRequest {
+
+    /**
+     * How the total of rows is obtained.
+     */
+    public static enum CountMode {
+	/**
+	 * The count query always runs, concurrently with the page query.
+	 */
+	CONCURRENT,
+	/**
+	 * The count query only runs once the page query returns a full page. A non full page tells the total itself.
+	 */
+	IF_FULL,
+	/**
+	 * The count query never runs. The total is only known when the page query returns a non full page.
+	 */
+	NONE;
+    }
+
+    private final int page;
+    private final int size;
+    private final CountMode countMode;
+
+    public PageRequest(int page, int size) {
+	this(page, size, CountMode.CONCURRENT);
+    }
+
+    public PageRequest(int page, int size, CountMode countMode) {
+	if (page < 0 || size <= 0) {
+	    throw new IllegalArgumentException("Invalid page '" + page + "' of size '" + size + "'.");
+	}
+	this.page = page;
+	this.size = size;
+	this.countMode = countMode;
+    }
+
+    public int getPage() {
+	return page;
+    }
+
+    public int getSize() {
+	return size;
+    }
+
+    public int getOffset() {
+	return page * size;
+    }
+
+    public CountMode getCountMode() {
+	return countMode;
+    }
+}
@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright (c) 2018, Xavier Miret Andres <xavier.mires@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package org.matcher.replica;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * The read replicas of a primary database, shared by the {@link ReplicatedEntityMatcher}s reading from them.
+ * <p>
+ * Each query goes to the next replica in turn ({@link Selection#ROUND_ROBIN}), or to the replica with the fewest
+ * queries running ({@link Selection#LEAST_OUTSTANDING}), ties going to the next one in turn.
+ */
+public class ReplicaSet {
+
+    public static enum Selection {
+	ROUND_ROBIN, LEAST_OUTSTANDING;
+    }
+
+    private final List<EntityManagerFactory> replicas;
+    private final Selection selection;
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicInteger[] outstanding;
+    private final AtomicLong[] routed;
+
+    public ReplicaSet(List<EntityManagerFactory> replicas, Selection selection) {
+	if (replicas.isEmpty()) {
+	    throw new IllegalArgumentException("At least one replica is required.");
+	}
+	this.replicas = Collections.unmodifiableList(new ArrayList<>(replicas));
+	this.selection = selection;
+	this.outstanding = new AtomicInteger[replicas.size()];
+	this.routed = new AtomicLong[replicas.size()];
+	for (int i = 0; i < replicas.size(); i++) {
+	    outstanding[i] = new AtomicInteger();
+	    routed[i] = new AtomicLong();
+	}
+    }
+
+    /**
+     * Returns the index of the replica the next query goes to.
+     */
+    public int select() {
+	final int first = Math.floorMod(next.getAndIncrement(), replicas.size());
+	if (selection == Selection.ROUND_ROBIN) {
+	    return first;
+	}
+
+	int selected = first;
+	for (int i = 1; i < replicas.size(); i++) {
+	    final int candidate = (first + i) % replicas.size();
+	    if (outstanding[candidate].get() < outstanding[selected].get()) {
+		selected = candidate;
+	    }
+	}
+	return selected;
+    }
+
+    void started(int replica) {
+	outstanding[replica].incrementAndGet();
+	routed[replica].incrementAndGet();
+    }
+
+    void finished(int replica) {
+	outstanding[replica].decrementAndGet();
+    }
+
+    public List<EntityManagerFactory> getReplicas() {
+	return replicas;
+    }
+
+    public Selection getSelection() {
+	return selection;
+    }
+
+    /**
+     * Returns the number of queries running on the {@code replica}.
+     */
+    public int getOutstandingCount(int replica) {
+	return outstanding[replica].get();
+    }
+
+    /**
+     * Returns the number of queries executed on the {@code replica}.
+     */
+    public long getRoutedCount(int replica) {
+	return routed[replica].get();
+    }
+}
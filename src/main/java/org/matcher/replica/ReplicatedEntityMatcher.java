@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright (c) 2018, Xavier Miret Andres <xavier.mires@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package org.matcher.replica;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+
+import org.matcher.EntityMatcher;
+import org.matcher.option.MatcherOption;
+import org.matcher.option.QueryOption;
+import org.matcher.parameter.ParameterBinding;
+import org.matcher.util.TransformableTypedQuery;
+
+/**
+ * An entity matcher reading from the replicas of its primary database.
+ * <p>
+ * Matcher queries ({@code findAny}, {@code findUnique}, {@code count}, {@code exists}...) run on a replica chosen by
+ * the {@link ReplicaSet}, while writes and the plain {@link EntityManager} methods use the primary entity manager.
+ * Queries locking their rows, and queries issued while the primary transaction is active, stay on the primary so that
+ * they see its writes.
+ * <p>
+ * Entities read from a replica are detached once read, they must be merged to write their changes. Replica entity
+ * managers are opened on first use, cleared after every query and closed with this matcher.
+ */
+public class ReplicatedEntityMatcher extends EntityMatcher {
+
+    private final ReplicaSet replicas;
+    private final EntityManager[] replicaManagers;
+
+    public ReplicatedEntityMatcher(EntityManager primary, ReplicaSet replicas) {
+	super(primary);
+	this.replicas = replicas;
+	this.replicaManagers = new EntityManager[replicas.getReplicas().size()];
+    }
+
+    public ReplicaSet getReplicaSet() {
+	return replicas;
+    }
+
+    @Override
+    protected <T> TypedQuery<T> createQuery(String queryTxt, ParameterBinding bindings, Class<T> returnType,
+	    List<MatcherOption> options) {
+	final List<MatcherOption> allOptions = new ArrayList<>(getDefaultOptions());
+	allOptions.addAll(options);
+	if (getTransaction().isActive() || QueryOption.isLocking(allOptions)) {
+	    return super.createQuery(queryTxt, bindings, returnType, options);
+	}
+
+	final int replica = replicas.select();
+	final EntityManager replicaManager = getReplicaManager(replica);
+	final TypedQuery<T> query = replicaManager.createQuery(queryTxt, returnType);
+	bindings.resolveParams(queryTxt, query);
+	for (MatcherOption option : allOptions) {
+	    option.apply(query);
+	}
+	return new RoutedTypedQuery<>(query, replicaManager, replicas, replica);
+    }
+
+    @Override
+    protected EntityManager getExecutingEntityManager(TypedQuery<?> query) {
+	for (TypedQuery<?> wrapped = query; wrapped instanceof TransformableTypedQuery;
+		wrapped = ((TransformableTypedQuery<?, ?>) wrapped).getDelegate()) {
+	    if (wrapped instanceof RoutedTypedQuery) {
+		return ((RoutedTypedQuery<?>) wrapped).getEntityManager();
+	    }
+	}
+	return super.getExecutingEntityManager(query);
+    }
+
+    EntityManager getReplicaManager(int replica) {
+	if (replicaManagers[replica] == null) {
+	    replicaManagers[replica] = replicas.getReplicas().get(replica).createEntityManager();
+	}
+	return replicaManagers[replica];
+    }
+
+    @Override
+    public void clear() {
+	for (EntityManager replicaManager : replicaManagers) {
+	    if (replicaManager != null) {
+		replicaManager.clear();
+	    }
+	}
+	super.clear();
+    }
+
+    @Override
+    public void close() {
+	try {
+	    for (EntityManager replicaManager : replicaManagers) {
+		if (replicaManager != null && replicaManager.isOpen()) {
+		    replicaManager.close();
+		}
+	    }
+	} finally {
+	    super.close();
+	}
+    }
+}
@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright (c) 2018, Xavier Miret Andres <xavier.mires@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package org.matcher.replica;
+
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+
+import org.matcher.util.TransformableTypedQuery;
+
+/**
+ * A typed query running on a replica, accounted as outstanding in its {@link ReplicaSet} while it executes.
+ * <p>
+ * The replica entity manager is cleared once the results are read, so they are detached and the next query reads the
+ * replica state again. Cursors detach the entities they read themselves.
+ */
+class RoutedTypedQuery<T> extends TransformableTypedQuery<T, T> {
+
+    private final EntityManager entityManager;
+    private final ReplicaSet replicas;
+    private final int replica;
+
+    RoutedTypedQuery(TypedQuery<T> query, EntityManager entityManager, ReplicaSet replicas, int replica) {
+	super(query, result -> result);
+	this.entityManager = entityManager;
+	this.replicas = replicas;
+	this.replica = replica;
+    }
+
+    EntityManager getEntityManager() {
+	return entityManager;
+    }
+
+    @Override
+    public List<T> getResultList() {
+	replicas.started(replica);
+	try {
+	    return super.getResultList();
+	} finally {
+	    entityManager.clear();
+	    replicas.finished(replica);
+	}
+    }
+
+    @Override
+    public T getSingleResult() {
+	replicas.started(replica);
+	try {
+	    return super.getSingleResult();
+	} finally {
+	    entityManager.clear();
+	    replicas.finished(replica);
+	}
+    }
+}
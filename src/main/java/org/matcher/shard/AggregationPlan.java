@@ -0,0 +1,321 @@
+/*******************************************************************************
+ * Copyright (c) 2018, Xavier Miret Andres <xavier.mires@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package org.matcher.shard;
+
+import static org.matcher.builder.BuilderUtils.getColumns;
+import static org.matcher.expression.Expressions.AVG;
+import static org.matcher.expression.Expressions.COMMA;
+import static org.matcher.expression.Expressions.COUNT;
+import static org.matcher.expression.Expressions.DISTINCT;
+import static org.matcher.expression.Expressions.MAX;
+import static org.matcher.expression.Expressions.MIN;
+import static org.matcher.expression.Expressions.SUM;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.matcher.builder.ClauseBuilder;
+import org.matcher.builder.ClauseBuilder.ClauseType;
+import org.matcher.expression.Expression;
+import org.matcher.expression.FunctionExpression;
+import org.matcher.expression.TypedExpression;
+import org.matcher.name.NameBasedSelectBuilder;
+
+/**
+ * Rewrites an aggregating selection into partial aggregates which every shard computes and which are combined
+ * afterwards, so that only one row per group and shard is transferred.
+ * <p>
+ * {@code COUNT} and {@code SUM} partials are added, {@code MIN} and {@code MAX} ones compared, and {@code AVG} is
+ * pushed down as {@code SUM} and {@code COUNT}. Groups of all shards are merged by their keys, selected properties
+ * and {@code DISTINCT} ones being keys.
+ */
+class AggregationPlan {
+
+    private static enum Combiner {
+	KEY, ADD, MIN, MAX;
+    }
+
+    private final ClauseBuilder<?> partialSelect;
+    private final ClauseBuilder<?> groupBy;
+    private final Combiner[] combiners;
+    private final int[] keys;
+    private final int[] outputs;
+    private final boolean[] averages;
+
+    private AggregationPlan(ClauseBuilder<?> partialSelect, ClauseBuilder<?> groupBy, List<Combiner> combiners,
+	    int[] outputs, boolean[] averages) {
+	this.partialSelect = partialSelect;
+	this.groupBy = groupBy;
+	this.combiners = combiners.toArray(new Combiner[combiners.size()]);
+	this.keys = new int[(int) combiners.stream().filter(combiner -> combiner == Combiner.KEY).count()];
+	for (int i = 0, key = 0; i < this.combiners.length; i++) {
+	    if (this.combiners[i] == Combiner.KEY) {
+		keys[key++] = i;
+	    }
+	}
+	this.outputs = outputs;
+	this.averages = averages;
+    }
+
+    /**
+     * Plans the {@code selectBuilder}, or returns null if it neither aggregates nor is grouped.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    static AggregationPlan of(ClauseBuilder<?> selectBuilder, ClauseBuilder<?> afterWhereBuilder) {
+	selectBuilder.overwriteNullReferenceAndProperties(selectBuilder.getLeadingReferent(), null);
+
+	final List<Expression> columns = getColumns(selectBuilder);
+	final boolean grouped = isGrouped(afterWhereBuilder);
+	if (!grouped && columns.stream().noneMatch(column -> column instanceof FunctionExpression)) {
+	    return null;
+	}
+	if (afterWhereBuilder.getClauseType() != null && (afterWhereBuilder.getClauseType() != ClauseType.GROUP_BY
+		|| afterWhereBuilder.getPreviousClause() != null)) {
+	    throw new UnsupportedOperationException("Only GROUP BY clauses can be merged across shards.");
+	}
+
+	final TypedExpression<?> root = new TypedExpression<>(null);
+	final List<Combiner> combiners = new ArrayList<>();
+	final int[] outputs = new int[columns.size()];
+	final boolean[] averages = new boolean[columns.size()];
+
+	for (int i = 0; i < columns.size(); i++) {
+	    final Expression column = columns.get(i);
+	    final String function = column instanceof FunctionExpression ? column.getOperator() : null;
+	    if (function != null && column.hasChildren()) {
+		throw new UnsupportedOperationException("Nested function '" + function + "' can't be merged across shards.");
+	    }
+
+	    outputs[i] = combiners.size();
+	    if (function == null || DISTINCT.equals(function)) {
+		add(root, column, combiners, Combiner.KEY);
+	    } else if (COUNT.equals(function) || SUM.equals(function)) {
+		add(root, column, combiners, Combiner.ADD);
+	    } else if (MIN.equals(function)) {
+		add(root, column, combiners, Combiner.MIN);
+	    } else if (MAX.equals(function)) {
+		add(root, column, combiners, Combiner.MAX);
+	    } else if (AVG.equals(function)) {
+		add(root, function(SUM, column), combiners, Combiner.ADD);
+		add(root, function(COUNT, column), combiners, Combiner.ADD);
+		averages[i] = true;
+	    } else {
+		throw new UnsupportedOperationException("Function '" + function + "' can't be merged across shards.");
+	    }
+	}
+
+	final NameBasedSelectBuilder<?> partialSelect = new NameBasedSelectBuilder(selectBuilder.getLeadingReferent());
+	partialSelect.getExpressions().add(root);
+	return new AggregationPlan(partialSelect, afterWhereBuilder, combiners, outputs, averages);
+    }
+
+    private static boolean isGrouped(ClauseBuilder<?> builder) {
+	for (ClauseBuilder<?> clause = builder; clause != null; clause = clause.getPreviousClause()) {
+	    if (clause.getClauseType() == ClauseType.GROUP_BY || clause.getClauseType() == ClauseType.HAVING) {
+		return true;
+	    }
+	}
+	return false;
+    }
+
+    private static void add(TypedExpression<?> root, Expression column, List<Combiner> combiners, Combiner combiner) {
+	if (!combiners.isEmpty()) {
+	    root.addChild(COMMA);
+	}
+	root.addChild(column);
+	combiners.add(combiner);
+    }
+
+    private static Expression function(String function, Expression column) {
+	final FunctionExpression<?> expression = new FunctionExpression<>(function, null);
+	expression.setReferent(column.getReferent());
+	expression.setProperty(column.getProperty());
+	return expression;
+    }
+
+    /**
+     * Returns the selection of partial aggregates every shard computes.
+     */
+    ClauseBuilder<?> getPartialSelect() {
+	return partialSelect;
+    }
+
+    ClauseBuilder<?> getGroupBy() {
+	return groupBy;
+    }
+
+    /**
+     * Returns the row type of the partial aggregates query.
+     */
+    Class<?> getPartialType() {
+	return combiners.length == 1 ? Object.class : Object[].class;
+    }
+
+    /**
+     * Combines the partial aggregates of all shards into the rows the original selection returns.
+     */
+    List<Object> merge(List<? extends List<?>> shardRows) {
+	final Groups groups = new Groups();
+	for (List<?> rows : shardRows) {
+	    for (Object row : rows) {
+		final Object[] partial = combiners.length == 1 ? new Object[] { row } : (Object[]) row;
+		final Object[] group = groups.get(partial);
+		if (group == null) {
+		    groups.put(partial, partial);
+		} else {
+		    combine(group, partial);
+		}
+	    }
+	}
+
+	final List<Object> results = new ArrayList<>(groups.all.size());
+	for (Object[] group : groups.all) {
+	    results.add(finish(group));
+	}
+	return results;
+    }
+
+    private void combine(Object[] group, Object[] partial) {
+	for (int i = 0; i < combiners.length; i++) {
+	    switch (combiners[i]) {
+	    case ADD:
+		group[i] = add(group[i], partial[i]);
+		break;
+	    case MIN:
+		group[i] = min(group[i], partial[i]);
+		break;
+	    case MAX:
+		group[i] = max(group[i], partial[i]);
+		break;
+	    default:
+		break;
+	    }
+	}
+    }
+
+    private Object finish(Object[] group) {
+	final Object[] row = new Object[outputs.length];
+	for (int i = 0; i < outputs.length; i++) {
+	    if (averages[i]) {
+		final Number sum = (Number) group[outputs[i]];
+		final Number count = (Number) group[outputs[i] + 1];
+		row[i] = sum == null || count.longValue() == 0 ? null : sum.doubleValue() / count.longValue();
+	    } else {
+		row[i] = group[outputs[i]];
+	    }
+	}
+	return row.length == 1 ? row[0] : row;
+    }
+
+    private static Object add(Object value, Object other) {
+	if (value == null || other == null) {
+	    return value == null ? other : value;
+	}
+	if (value instanceof BigDecimal || other instanceof BigDecimal) {
+	    return toBigDecimal(value).add(toBigDecimal(other));
+	}
+	if (value instanceof Double || value instanceof Float || other instanceof Double || other instanceof Float) {
+	    return ((Number) value).doubleValue() + ((Number) other).doubleValue();
+	}
+	if (value instanceof BigInteger || other instanceof BigInteger) {
+	    return toBigInteger(value).add(toBigInteger(other));
+	}
+	return ((Number) value).longValue() + ((Number) other).longValue();
+    }
+
+    private static BigDecimal toBigDecimal(Object value) {
+	return value instanceof BigDecimal ? (BigDecimal) value : new BigDecimal(value.toString());
+    }
+
+    private static BigInteger toBigInteger(Object value) {
+	return value instanceof BigInteger ? (BigInteger) value : BigInteger.valueOf(((Number) value).longValue());
+    }
+
+    /**
+     * Skips nulls, partials of shards without matching rows.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static Object min(Object value, Object other) {
+	if (value == null || other == null) {
+	    return value == null ? other : value;
+	}
+	return ((Comparable) value).compareTo(other) <= 0 ? value : other;
+    }
+
+    /**
+     * Skips nulls, partials of shards without matching rows.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static Object max(Object value, Object other) {
+	if (value == null || other == null) {
+	    return value == null ? other : value;
+	}
+	return ((Comparable) value).compareTo(other) >= 0 ? value : other;
+    }
+
+    /**
+     * The groups by key, in the order they are found. A single integral key is looked up without boxing.
+     */
+    private class Groups {
+	final List<Object[]> all = new ArrayList<>();
+	final LongKeyedMap<Object[]> integralKeys = new LongKeyedMap<>();
+	final Map<Object, Object[]> otherKeys = new HashMap<>();
+
+	Object[] get(Object[] partial) {
+	    final Object key = keys.length == 1 ? partial[keys[0]] : null;
+	    if (isIntegral(key)) {
+		return integralKeys.get(((Number) key).longValue());
+	    }
+	    return otherKeys.get(key(partial));
+	}
+
+	void put(Object[] partial, Object[] group) {
+	    final Object key = keys.length == 1 ? partial[keys[0]] : null;
+	    if (isIntegral(key)) {
+		integralKeys.put(((Number) key).longValue(), group);
+	    } else {
+		otherKeys.put(key(partial), group);
+	    }
+	    all.add(group);
+	}
+
+	private Object key(Object[] partial) {
+	    if (keys.length == 1) {
+		return Arrays.asList(partial[keys[0]]);
+	    }
+	    final Object[] key = new Object[keys.length];
+	    for (int i = 0; i < keys.length; i++) {
+		key[i] = partial[keys[i]];
+	    }
+	    return Arrays.asList(key);
+	}
+
+	private boolean isIntegral(Object key) {
+	    return key instanceof Long || key instanceof Integer || key instanceof Short || key instanceof Byte;
+	}
+    }
+}
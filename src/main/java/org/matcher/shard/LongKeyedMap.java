@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright (c) 2018, Xavier Miret Andres <xavier.mires@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package org.matcher.shard;
+
+/**
+ * An open addressing hash map with primitive long keys, avoiding the boxing of integral group keys.
+ */
+class LongKeyedMap<V> {
+
+    private long[] keys;
+    private Object[] values;
+    private int size = 0;
+
+    LongKeyedMap() {
+	keys = new long[16];
+	values = new Object[16];
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(long key) {
+	final int mask = keys.length - 1;
+	for (int i = index(key, mask); values[i] != null; i = (i + 1) & mask) {
+	    if (keys[i] == key) {
+		return (V) values[i];
+	    }
+	}
+	return null;
+    }
+
+    /**
+     * Associates the non null {@code value} to the {@code key}.
+     */
+    void put(long key, V value) {
+	if (size * 2 >= keys.length) {
+	    resize();
+	}
+	if (insert(keys, values, key, value)) {
+	    size++;
+	}
+    }
+
+    int size() {
+	return size;
+    }
+
+    private void resize() {
+	final long[] newKeys = new long[keys.length * 2];
+	final Object[] newValues = new Object[values.length * 2];
+	for (int i = 0; i < keys.length; i++) {
+	    if (values[i] != null) {
+		insert(newKeys, newValues, keys[i], values[i]);
+	    }
+	}
+	keys = newKeys;
+	values = newValues;
+    }
+
+    private static boolean insert(long[] keys, Object[] values, long key, Object value) {
+	final int mask = keys.length - 1;
+	int i = index(key, mask);
+	for (; values[i] != null; i = (i + 1) & mask) {
+	    if (keys[i] == key) {
+		values[i] = value;
+		return false;
+	    }
+	}
+	keys[i] = key;
+	values[i] = value;
+	return true;
+    }
+
+    private static int index(long key, int mask) {
+	// murmur3 finalizer, spreads sequential keys
+	long hash = key;
+	hash ^= hash >>> 33;
+	hash *= 0xff51afd7ed558ccdL;
+	hash ^= hash >>> 33;
+	return (int) hash & mask;
+    }
+}
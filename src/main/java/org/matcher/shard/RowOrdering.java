@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright (c) 2018, Xavier Miret Andres <xavier.mires@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package org.matcher.shard;
+
+import static org.matcher.builder.BuilderUtils.getColumns;
+
+import java.lang.reflect.Field;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+
+import org.matcher.builder.ClauseBuilder;
+import org.matcher.builder.OrderByBuilder;
+import org.matcher.expression.Expression;
+import org.matcher.expression.FunctionExpression;
+
+/**
+ * Orders query result rows in memory as the database would do for an order by clause, so that rows of different
+ * databases can be merged.
+ * <p>
+ * Each sort property must be either selected or a property of a selected entity. Nulls go first, so the shard
+ * queries must be rendered with {@link OrderByBuilder#nullsFirst()}.
+ */
+class RowOrdering {
+
+    /**
+     * Returns the comparator ordering rows of the rendered {@code selectBuilder} as the {@code orderByBuilder} does.
+     */
+    static Comparator<Object> of(ClauseBuilder<?> selectBuilder, OrderByBuilder<?> orderByBuilder) {
+	final List<Expression> columns = getColumns(selectBuilder);
+	Comparator<Object> comparator = null;
+	for (Expression sortExpression : orderByBuilder.getSortExpressions()) {
+	    final Comparator<Object> next = Comparator.comparing(sortKey(columns, sortExpression),
+		    Comparator.nullsFirst(RowOrdering::compare));
+	    comparator = comparator == null ? next : comparator.thenComparing(next);
+	}
+	return comparator;
+    }
+
+    /**
+     * Returns the function reading the value of the {@code column}-th column of a row.
+     */
+    static Function<Object, Object> column(int column, int columns) {
+	return columns == 1 ? row -> row : row -> ((Object[]) row)[column];
+    }
+
+    private static Function<Object, Object> sortKey(List<Expression> columns, Expression sortExpression) {
+	for (int i = 0; i < columns.size(); i++) {
+	    final Expression column = columns.get(i);
+	    if (!(column instanceof FunctionExpression) && column.getReferent() == sortExpression.getReferent()
+		    && Objects.equals(column.getProperty(), sortExpression.getProperty())) {
+		return column(i, columns.size());
+	    }
+	}
+	for (int i = 0; i < columns.size(); i++) {
+	    final Expression column = columns.get(i);
+	    if (!(column instanceof FunctionExpression) && column.getReferent() == sortExpression.getReferent()
+		    && column.getProperty() == null) {
+		return column(i, columns.size()).andThen(property(sortExpression));
+	    }
+	}
+	throw new IllegalArgumentException("Cannot merge rows sorted by the not selected property '"
+		+ sortExpression.getProperty() + "'.");
+    }
+
+    private static Function<Object, Object> property(Expression sortExpression) {
+	final Field field;
+	try {
+	    field = sortExpression.getReferent().getDeclaredField(sortExpression.getProperty());
+	    field.setAccessible(true);
+	} catch (NoSuchFieldException e) {
+	    throw new IllegalArgumentException("Cannot read sort key '" + sortExpression.getProperty() + "'", e);
+	}
+	return entity -> {
+	    try {
+		return entity == null ? null : field.get(entity);
+	    } catch (IllegalAccessException e) {
+		throw new IllegalStateException(e);
+	    }
+	};
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static int compare(Object value, Object other) {
+	return ((Comparable) value).compareTo(other);
+    }
+}
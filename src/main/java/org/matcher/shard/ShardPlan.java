@@ -0,0 +1,200 @@
+/*******************************************************************************
+ * Copyright (c) 2018, Xavier Miret Andres <xavier.mires@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package org.matcher.shard;
+
+import static org.matcher.expression.Expressions.AND;
+import static org.matcher.expression.Expressions.CLOSE;
+import static org.matcher.expression.Expressions.EQUALS;
+import static org.matcher.expression.Expressions.IN;
+import static org.matcher.expression.Expressions.OPEN;
+import static org.matcher.expression.Expressions.OR;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.matcher.builder.ClauseBuilder;
+import org.matcher.expression.ConstantExpression;
+import org.matcher.expression.Expression;
+import org.matcher.expression.JoinQualifierExpression;
+import org.matcher.expression.QualifierExpression;
+
+/**
+ * The shards a where clause can match, given the shard key functions of the queried entities.
+ * <p>
+ * Equality and in predicates on a shard key restrict the shards to the ones of their values, {@code AND} intersects
+ * and {@code OR} joins the shards of its operands. Any other predicate can match any shard.
+ * <p>
+ * In predicates on a shard key are also split per shard: each shard is only sent the values it holds.
+ */
+class ShardPlan {
+
+    static class ShardKey {
+	final String property;
+	final ShardFunction function;
+
+	ShardKey(String property, ShardFunction function) {
+	    this.property = property;
+	    this.function = function;
+	}
+    }
+
+    private final Map<Class<?>, ShardKey> shardKeys;
+    private final int shards;
+    private final List<Expression> tokens;
+    private final Map<Integer, Map<Object, Object>> substitutions = new HashMap<>();
+    private int position = 0;
+
+    private ShardPlan(Map<Class<?>, ShardKey> shardKeys, int shards, List<Expression> tokens) {
+	this.shardKeys = shardKeys;
+	this.shards = shards;
+	this.tokens = tokens;
+    }
+
+    /**
+     * Plans the rendered {@code whereBuilder}.
+     */
+    static ShardPlan of(ClauseBuilder<?> whereBuilder, Map<Class<?>, ShardKey> shardKeys, int shards) {
+	return new ShardPlan(shardKeys, shards, new ArrayList<>(whereBuilder.getExpressions()));
+    }
+
+    /**
+     * Returns the shards which may hold matching rows.
+     */
+    BitSet targets() {
+	position = 0;
+	substitutions.clear();
+	if (tokens.isEmpty() || shardKeys.isEmpty()) {
+	    return all();
+	}
+	final BitSet targets = disjunction();
+	// unbalanced or unknown syntax, don't prune
+	return position == tokens.size() ? targets : all();
+    }
+
+    /**
+     * Returns the in lists values to bind instead of the original ones in the {@code shard} query, by identity.
+     */
+    Map<Object, Object> substitutions(int shard) {
+	final Map<Object, Object> shardSubstitutions = substitutions.get(shard);
+	return shardSubstitutions == null ? new IdentityHashMap<>() : shardSubstitutions;
+    }
+
+    private BitSet disjunction() {
+	final BitSet targets = conjunction();
+	while (is(OR)) {
+	    position++;
+	    targets.or(conjunction());
+	}
+	return targets;
+    }
+
+    private BitSet conjunction() {
+	final BitSet targets = operand();
+	while (is(AND)) {
+	    position++;
+	    targets.and(operand());
+	}
+	return targets;
+    }
+
+    private BitSet operand() {
+	if (position >= tokens.size()) {
+	    return all();
+	}
+	final Expression token = tokens.get(position++);
+	if (token == OPEN) {
+	    final BitSet targets = disjunction();
+	    if (position < tokens.size() && tokens.get(position) == CLOSE) {
+		position++;
+	    }
+	    return targets;
+	}
+	return predicate(token);
+    }
+
+    private boolean is(String operator) {
+	if (position < tokens.size() && tokens.get(position) instanceof ConstantExpression) {
+	    return operator.equals(tokens.get(position).resolve(null));
+	}
+	return false;
+    }
+
+    private BitSet predicate(Expression expression) {
+	if (!(expression instanceof QualifierExpression) || expression instanceof JoinQualifierExpression) {
+	    return all();
+	}
+	final ShardKey shardKey = shardKeys.get(expression.getReferent());
+	if (shardKey == null || !shardKey.property.equals(expression.getProperty())) {
+	    return all();
+	}
+
+	final Object value = ((QualifierExpression<?>) expression).getValue();
+	if (value == null) {
+	    return all();
+	}
+	if (EQUALS.equals(expression.getOperator())) {
+	    final BitSet targets = new BitSet(shards);
+	    targets.set(shardOf(shardKey, value));
+	    return targets;
+	}
+	if (IN.equals(expression.getOperator()) && value instanceof Collection) {
+	    return split(shardKey, (Collection<?>) value);
+	}
+	return all();
+    }
+
+    private BitSet split(ShardKey shardKey, Collection<?> values) {
+	final Map<Integer, List<Object>> perShard = new HashMap<>();
+	for (Object value : values) {
+	    if (value == null) {
+		continue; // never matches
+	    }
+	    perShard.computeIfAbsent(shardOf(shardKey, value), shard -> new ArrayList<>()).add(value);
+	}
+	final BitSet targets = new BitSet(shards);
+	for (Map.Entry<Integer, List<Object>> entry : perShard.entrySet()) {
+	    targets.set(entry.getKey());
+	    substitutions.computeIfAbsent(entry.getKey(), shard -> new IdentityHashMap<>()).put(values,
+		    entry.getValue());
+	}
+	return targets;
+    }
+
+    private int shardOf(ShardKey shardKey, Object value) {
+	final int shard = shardKey.function.shardOf(value);
+	if (shard < 0 || shard >= shards) {
+	    throw new IllegalStateException("Shard key '" + value + "' located in unknown shard '" + shard + "'.");
+	}
+	return shard;
+    }
+
+    private BitSet all() {
+	final BitSet targets = new BitSet(shards);
+	targets.set(0, shards);
+	return targets;
+    }
+}
@@ -0,0 +1,292 @@
+/*******************************************************************************
+ * Copyright (c) 2018, Xavier Miret Andres <xavier.mires@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package org.matcher.shard;
+
+import static org.matcher.BoundQuery.afterWhereClause;
+import static org.matcher.BoundQuery.whereClause;
+import static org.matcher.builder.BuilderUtils.getColumnName;
+import static org.matcher.expression.Expressions.selection;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.NoResultException;
+import javax.persistence.NonUniqueResultException;
+import javax.persistence.TypedQuery;
+
+import org.matcher.BoundQuery;
+import org.matcher.EntityMatcher;
+import org.matcher.builder.ClauseBuilder;
+import org.matcher.builder.ClauseBuilder.ClauseType;
+import org.matcher.builder.ConstructorSelectBuilder;
+import org.matcher.builder.OrderByBuilder;
+import org.matcher.builder.SelectBuilder;
+import org.matcher.expression.TypedExpression;
+import org.matcher.shard.ShardPlan.ShardKey;
+
+import com.google.common.collect.Iterators;
+
+/**
+ * Runs the same queries against several identically shaped databases (shards) and merges their results.
+ * <p>
+ * Queries are rendered once on the calling thread and sent to every shard in parallel, each on its own entity manager,
+ * so the returned entities are detached. The results of ordered queries are merged preserving the order, and limits
+ * are pushed down to every shard. Aggregations and groups are computed as partial aggregates per shard and combined.
+ */
+public class ShardedEntityMatcher {
+
+    private final List<EntityManagerFactory> shards;
+    private final Executor executor;
+    private final Map<Class<?>, ShardKey> shardKeys = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a sharded matcher querying the shards on the common fork join pool.
+     */
+    public ShardedEntityMatcher(List<EntityManagerFactory> shards) {
+	this(shards, ForkJoinPool.commonPool());
+    }
+
+    public ShardedEntityMatcher(List<EntityManagerFactory> shards, Executor executor) {
+	if (shards.isEmpty()) {
+	    throw new IllegalArgumentException("At least one shard is required.");
+	}
+	this.shards = Collections.unmodifiableList(new ArrayList<>(shards));
+	this.executor = executor;
+    }
+
+    public List<EntityManagerFactory> getShards() {
+	return shards;
+    }
+
+    /**
+     * Declares the {@code entity} shard key, so that queries pinning it only go to the shards which may match.
+     * <p>
+     * Rows of the {@code entity} with the {@code property} value v live in the shard {@code shardFunction.shardOf(v)}.
+     * Queries constraining the property with {@code eq} or {@code in} are only sent to the shards of their values,
+     * and in lists are split so that every shard only receives the values it holds.
+     */
+    public void shardBy(Class<?> entity, String property, ShardFunction shardFunction) {
+	getColumnName(entity, property); // validates the property
+	shardKeys.put(entity, new ShardKey(property, shardFunction));
+    }
+
+    /**
+     * See {@link EntityMatcher#findUnique(Class, ClauseBuilder)}.
+     * <p>
+     * Throws {@link NonUniqueResultException} if more than one shard matches.
+     */
+    public <T> T findUnique(Class<T> returnType, ClauseBuilder<?> clauseBuilder) {
+	return findUnique(returnType, selection(new TypedExpression<T>(returnType)), clauseBuilder);
+    }
+
+    /**
+     * See {@link EntityMatcher#findUnique(Class, SelectBuilder, ClauseBuilder)}.
+     * <p>
+     * Throws {@link NonUniqueResultException} if more than one shard matches.
+     */
+    public <T> T findUnique(Class<T> returnType, SelectBuilder<?, ?> selectBuilder, ClauseBuilder<?> clauseBuilder) {
+	final List<T> results = find(returnType, selectBuilder, whereClause(clauseBuilder),
+		afterWhereClause(clauseBuilder), 2);
+	if (results.isEmpty()) {
+	    throw new NoResultException("No shard matches the query.");
+	}
+	if (results.size() > 1) {
+	    throw new NonUniqueResultException("More than one result across shards.");
+	}
+	return results.get(0);
+    }
+
+    /**
+     * See {@link EntityMatcher#findAny(Class, ClauseBuilder)}.
+     */
+    public <T> List<T> findAny(Class<T> returnType, ClauseBuilder<?> clauseBuilder) {
+	return findAny(returnType, selection(new TypedExpression<T>(returnType)), clauseBuilder);
+    }
+
+    /**
+     * See {@link EntityMatcher#findAny(Class, SelectBuilder, ClauseBuilder)}.
+     */
+    public <T> List<T> findAny(Class<T> returnType, SelectBuilder<?, ?> selectBuilder, ClauseBuilder<?> clauseBuilder) {
+	return find(returnType, selectBuilder, whereClause(clauseBuilder), afterWhereClause(clauseBuilder),
+		Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the first {@code maxResults} elements of type {@code returnType} matching the where clause across all
+     * shards.
+     * <p>
+     * See {@link #findAny(Class, SelectBuilder, ClauseBuilder, OrderByBuilder, int)}.
+     */
+    public <T> List<T> findAny(Class<T> returnType, ClauseBuilder<?> whereBuilder, OrderByBuilder<?> orderByBuilder,
+	    int maxResults) {
+	return findAny(returnType, selection(new TypedExpression<T>(returnType)), whereBuilder, orderByBuilder,
+		maxResults);
+    }
+
+    /**
+     * Returns the first {@code maxResults} elements of type {@code returnType} matching the jpql expression across all
+     * shards.
+     * <p>
+     * Every shard returns at most {@code maxResults} rows, already sorted, which are lazily merged (k-way) until the
+     * limit is reached. Sort properties must be selected, or be properties of a selected entity. Shards sort nulls
+     * first, rendered explicitly since databases differ on it.
+     */
+    public <T> List<T> findAny(Class<T> returnType, SelectBuilder<?, ?> selectBuilder, ClauseBuilder<?> whereBuilder,
+	    OrderByBuilder<?> orderByBuilder, int maxResults) {
+	return find(returnType, selectBuilder, whereClause(whereBuilder), orderByBuilder, maxResults);
+    }
+
+    private <T> List<T> find( //
+	    Class<T> returnType, //
+	    ClauseBuilder<?> selectBuilder, //
+	    ClauseBuilder<?> whereBuilder, //
+	    ClauseBuilder<?> afterWhereBuilder, //
+	    int maxResults) {
+
+	final AggregationPlan aggregation = AggregationPlan.of(selectBuilder, afterWhereBuilder);
+	if (selectBuilder instanceof ConstructorSelectBuilder
+		&& (aggregation != null || afterWhereBuilder.getClauseType() == ClauseType.ORDER_BY)) {
+	    // merging needs the columns, which constructor expressions hide
+	    throw new UnsupportedOperationException(
+		    "Constructor expressions can't be aggregated or ordered across shards.");
+	}
+	if (selectBuilder instanceof ConstructorSelectBuilder) {
+	    ((ConstructorSelectBuilder<?, ?>) selectBuilder).getConstructor(shards.get(0).getMetamodel());
+	}
+	if (aggregation != null) {
+	    final Map<EntityManagerFactory, BoundQuery> queries = plan(aggregation.getPartialSelect(), whereBuilder,
+		    aggregation.getGroupBy());
+	    @SuppressWarnings("unchecked")
+	    final List<T> results = (List<T>) aggregation
+		    .merge(execute(queries, aggregation.getPartialType(), Integer.MAX_VALUE));
+	    return results.size() > maxResults ? new ArrayList<>(results.subList(0, maxResults)) : results;
+	}
+
+	// the merge comparator needs every shard ordering nulls the same way, whatever its database default
+	final Map<EntityManagerFactory, BoundQuery> queries = plan(selectBuilder, whereBuilder,
+		afterWhereBuilder.getClauseType() == ClauseType.ORDER_BY
+			? ((OrderByBuilder<?>) afterWhereBuilder).withNullsFirst() : afterWhereBuilder);
+	final List<List<T>> results = execute(queries, returnType, maxResults);
+
+	if (afterWhereBuilder.getClauseType() == ClauseType.ORDER_BY) {
+	    final Comparator<Object> comparator = RowOrdering.of(selectBuilder, (OrderByBuilder<?>) afterWhereBuilder);
+	    final List<Iterator<T>> sorted = new ArrayList<>(results.size());
+	    for (List<T> result : results) {
+		sorted.add(result.iterator());
+	    }
+	    return copy(Iterators.mergeSorted(sorted, comparator), maxResults);
+	}
+	return copy(Iterators.concat(results.stream().map(List::iterator).iterator()), maxResults);
+    }
+
+    /**
+     * Renders the query of every shard which may hold matching rows, in the shards order.
+     */
+    private Map<EntityManagerFactory, BoundQuery> plan( //
+	    ClauseBuilder<?> selectBuilder, //
+	    ClauseBuilder<?> whereBuilder, //
+	    ClauseBuilder<?> afterWhereBuilder) {
+
+	final BoundQuery query = BoundQuery.of(selectBuilder, whereBuilder, afterWhereBuilder);
+	final ShardPlan plan = ShardPlan.of(whereBuilder, shardKeys, shards.size());
+	final BitSet targets = plan.targets();
+
+	final Map<EntityManagerFactory, BoundQuery> queries = new LinkedHashMap<>();
+	for (int shard = targets.nextSetBit(0); shard >= 0; shard = targets.nextSetBit(shard + 1)) {
+	    final Map<Object, Object> substitutions = plan.substitutions(shard);
+	    queries.put(shards.get(shard), substitutions.isEmpty() ? query
+		    : BoundQuery.of(selectBuilder, whereBuilder, afterWhereBuilder, new ShardBinding(substitutions)));
+	}
+	return queries;
+    }
+
+    private static <T> List<T> copy(Iterator<T> results, int maxResults) {
+	final List<T> copy = new ArrayList<>();
+	while (copy.size() < maxResults && results.hasNext()) {
+	    copy.add(results.next());
+	}
+	return copy;
+    }
+
+    /**
+     * Runs every shard query in parallel, returning each shard results in the shards order. A single shard query runs
+     * on the calling thread.
+     * <p>
+     * Subclasses can override it, for instance to retry failed shards.
+     */
+    protected <T> List<List<T>> execute(Map<EntityManagerFactory, BoundQuery> queries, Class<T> returnType,
+	    int maxResults) {
+	if (queries.size() == 1) {
+	    final Map.Entry<EntityManagerFactory, BoundQuery> query = queries.entrySet().iterator().next();
+	    return Collections.singletonList(execute(query.getKey(), query.getValue(), returnType, maxResults));
+	}
+
+	final List<CompletableFuture<List<T>>> futures = new ArrayList<>(queries.size());
+	for (Map.Entry<EntityManagerFactory, BoundQuery> query : queries.entrySet()) {
+	    futures.add(CompletableFuture.supplyAsync(
+		    () -> execute(query.getKey(), query.getValue(), returnType, maxResults), executor));
+	}
+	final List<List<T>> results = new ArrayList<>(queries.size());
+	for (CompletableFuture<List<T>> future : futures) {
+	    results.add(join(future));
+	}
+	return results;
+    }
+
+    private static <T> List<T> execute(EntityManagerFactory shard, BoundQuery query, Class<T> returnType,
+	    int maxResults) {
+	final EntityManager entityManager = shard.createEntityManager();
+	try {
+	    final TypedQuery<T> typedQuery = query.createQuery(entityManager, returnType);
+	    if (maxResults != Integer.MAX_VALUE) {
+		typedQuery.setMaxResults(maxResults);
+	    }
+	    return typedQuery.getResultList();
+	} finally {
+	    entityManager.close();
+	}
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+	try {
+	    return future.join();
+	} catch (CompletionException e) {
+	    if (e.getCause() instanceof RuntimeException) {
+		throw (RuntimeException) e.getCause();
+	    }
+	    throw e;
+	}
+    }
+}
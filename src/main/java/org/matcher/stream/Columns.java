@@ -0,0 +1,191 @@
+/*******************************************************************************
+ * Copyright (c) 2018, Xavier Miret Andres <xavier.mires@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package org.matcher.stream;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Numeric query results stored column by column in primitive arrays, which grow as rows are added.
+ * <p>
+ * Each column is integral ({@code long}) or decimal ({@code double}) depending on the type of its first value. Null
+ * values can't be stored, filter them out in the where clause. Values which can't be stored exactly (i.e. a
+ * {@link BigInteger} overflowing a long) are rejected rather than truncated.
+ */
+public class Columns {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private long[][] longs;
+    private double[][] doubles;
+    private int size;
+
+    /**
+     * Appends a row, either a single value or an {@code Object[]} of values.
+     */
+    public void add(Object row) {
+	final Object[] values = row instanceof Object[] ? (Object[]) row : null;
+	final int columnCount = values == null ? 1 : values.length;
+	if (longs == null) {
+	    initialize(values == null ? new Object[] { row } : values);
+	} else if (columnCount != longs.length) {
+	    throw new IllegalArgumentException("Expected " + longs.length + " columns, found " + columnCount + ".");
+	}
+	if (size == capacity()) {
+	    grow();
+	}
+	for (int column = 0; column < columnCount; column++) {
+	    final Object value = values == null ? row : values[column];
+	    if (!(value instanceof Number)) {
+		throw value == null ? new IllegalStateException("Column " + column + " has null values.")
+			: new IllegalArgumentException("Column " + column + " isn't numeric.");
+	    }
+	    if (longs[column] != null) {
+		longs[column][size] = toLong(column, (Number) value);
+	    } else {
+		doubles[column][size] = toDouble(column, (Number) value);
+	    }
+	}
+	size++;
+    }
+
+    /**
+     * Returns the number of rows.
+     */
+    public int size() {
+	return size;
+    }
+
+    /**
+     * Returns the number of columns, zero if there are no rows.
+     */
+    public int getColumnCount() {
+	return longs == null ? 0 : longs.length;
+    }
+
+    public boolean isIntegral(int column) {
+	checkColumn(column);
+	return size == 0 || longs[column] != null;
+    }
+
+    /**
+     * Returns the values of an integral {@code column}.
+     */
+    public long[] getLongs(int column) {
+	if (!isIntegral(column)) {
+	    throw new IllegalStateException("Column " + column + " isn't integral.");
+	}
+	return size == 0 ? new long[0] : Arrays.copyOf(longs[column], size);
+    }
+
+    /**
+     * Returns the values of an integral {@code column} which must fit in an {@code int}.
+     */
+    public int[] getInts(int column) {
+	final long[] values = getLongs(column);
+	final int[] ints = new int[values.length];
+	for (int i = 0; i < values.length; i++) {
+	    ints[i] = Math.toIntExact(values[i]);
+	}
+	return ints;
+    }
+
+    /**
+     * Returns the values of the {@code column}, widening integral ones.
+     */
+    public double[] getDoubles(int column) {
+	checkColumn(column);
+	if (size == 0) {
+	    return new double[0];
+	}
+	if (doubles[column] != null) {
+	    return Arrays.copyOf(doubles[column], size);
+	}
+	final double[] values = new double[size];
+	for (int i = 0; i < size; i++) {
+	    values[i] = longs[column][i];
+	}
+	return values;
+    }
+
+    private void initialize(Object[] firstRow) {
+	longs = new long[firstRow.length][];
+	doubles = new double[firstRow.length][];
+	for (int column = 0; column < firstRow.length; column++) {
+	    if (isIntegral(firstRow[column])) {
+		longs[column] = new long[INITIAL_CAPACITY];
+	    } else {
+		doubles[column] = new double[INITIAL_CAPACITY];
+	    }
+	}
+    }
+
+    private static boolean isIntegral(Object value) {
+	return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte
+		|| value instanceof BigInteger;
+    }
+
+    private static long toLong(int column, Number value) {
+	if (!isIntegral(value)) {
+	    throw new IllegalArgumentException("Column " + column + " mixes integral and decimal values.");
+	}
+	if (value instanceof BigInteger) {
+	    try {
+		return ((BigInteger) value).longValueExact();
+	    } catch (ArithmeticException e) {
+		throw new IllegalArgumentException("Column " + column + " value " + value + " overflows a long.", e);
+	    }
+	}
+	return value.longValue();
+    }
+
+    private static double toDouble(int column, Number value) {
+	final double converted = value.doubleValue();
+	if ((value instanceof BigDecimal || value instanceof BigInteger) && (Double.isInfinite(converted)
+		|| BigDecimal.valueOf(converted).compareTo(new BigDecimal(value.toString())) != 0)) {
+	    throw new IllegalArgumentException("Column " + column + " value " + value + " doesn't fit a double.");
+	}
+	return converted;
+    }
+
+    private int capacity() {
+	return longs[0] != null ? longs[0].length : doubles[0].length;
+    }
+
+    private void grow() {
+	final int capacity = capacity() * 2;
+	for (int column = 0; column < longs.length; column++) {
+	    if (longs[column] != null) {
+		longs[column] = Arrays.copyOf(longs[column], capacity);
+	    } else {
+		doubles[column] = Arrays.copyOf(doubles[column], capacity);
+	    }
+	}
+    }
+
+    private void checkColumn(int column) {
+	if (size > 0 && (column < 0 || column >= longs.length)) {
+	    throw new IndexOutOfBoundsException("Column " + column + " of " + longs.length + ".");
+	}
+    }
+}
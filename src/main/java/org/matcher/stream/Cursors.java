@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * Copyright (c) 2018, Xavier Miret Andres <xavier.mires@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package org.matcher.stream;
+
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.persistence.TypedQuery;
+
+public class Cursors {
+
+    private static final boolean scrollable = isPresent("org.hibernate.ScrollableResults");
+
+    /**
+     * Opens a cursor over the {@code query} results reading {@code fetchSize} rows per round trip.
+     * <p>
+     * The provider's scrollable cursor is used when available (hibernate), otherwise the results are paged through
+     * {@link TypedQuery#setFirstResult(int)} and {@link TypedQuery#setMaxResults(int)}, in which case the query should
+     * define an order.
+     */
+    public static <T> Cursor<T> open(TypedQuery<T> query, int fetchSize) {
+	if (fetchSize <= 0) {
+	    throw new IllegalArgumentException("Fetch size must be positive.");
+	}
+	if (scrollable) {
+	    final Cursor<T> cursor = ScrollableCursor.open(query, fetchSize);
+	    if (cursor != null) {
+		return cursor;
+	    }
+	}
+	return new PagingCursor<>(query, fetchSize);
+    }
+
+    /**
+     * Returns a sequential stream over the {@code cursor} which closes it when the stream is closed.
+     */
+    public static <T> Stream<T> stream(Cursor<T> cursor) {
+	final Spliterator<T> spliterator = Spliterators.spliteratorUnknownSize(cursor, Spliterator.ORDERED);
+	return StreamSupport.stream(spliterator, false).onClose(cursor::close);
+    }
+
+    private static boolean isPresent(String className) {
+	try {
+	    Class.forName(className, false, Cursors.class.getClassLoader());
+	    return true;
+	} catch (ClassNotFoundException | LinkageError e) {
+	    return false;
+	}
+    }
+}
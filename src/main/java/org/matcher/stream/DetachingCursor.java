@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright (c) 2018, Xavier Miret Andres <xavier.mires@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package org.matcher.stream;
+
+import javax.persistence.EntityManager;
+
+/**
+ * A cursor over entities which detaches the already returned ones every {@code interval} rows, keeping the
+ * persistence context size constant no matter how many rows are read.
+ */
+public class DetachingCursor<T> implements Cursor<T> {
+
+    private final Cursor<T> delegate;
+    private final EntityManager entityManager;
+    private final Object[] processed;
+    private int size = 0;
+
+    public DetachingCursor(Cursor<T> delegate, EntityManager entityManager, int interval) {
+	this.delegate = delegate;
+	this.entityManager = entityManager;
+	this.processed = new Object[interval];
+    }
+
+    @Override
+    public boolean hasNext() {
+	return delegate.hasNext();
+    }
+
+    @Override
+    public T next() {
+	if (size == processed.length) {
+	    detachProcessed();
+	}
+	final T next = delegate.next();
+	if (next != null) {
+	    processed[size++] = next;
+	}
+	return next;
+    }
+
+    @Override
+    public void close() {
+	try {
+	    detachProcessed();
+	} finally {
+	    delegate.close();
+	}
+    }
+
+    private void detachProcessed() {
+	for (int i = 0; i < size; i++) {
+	    entityManager.detach(processed[i]);
+	    processed[i] = null;
+	}
+	size = 0;
+    }
+}
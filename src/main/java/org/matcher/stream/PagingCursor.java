@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright (c) 2018, Xavier Miret Andres <xavier.mires@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package org.matcher.stream;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import javax.persistence.TypedQuery;
+
+/**
+ * A provider independent cursor which reads the query results page by page.
+ */
+class PagingCursor<T> implements Cursor<T> {
+
+    private final TypedQuery<T> query;
+    private final int fetchSize;
+    private final int firstResult;
+    private final int maxResults;
+
+    private Iterator<T> page = Collections.emptyIterator();
+    private int fetched = 0;
+    private boolean exhausted = false;
+
+    PagingCursor(TypedQuery<T> query, int fetchSize) {
+	this.query = query;
+	this.fetchSize = fetchSize;
+	this.firstResult = query.getFirstResult();
+	this.maxResults = query.getMaxResults();
+    }
+
+    @Override
+    public boolean hasNext() {
+	while (!page.hasNext() && !exhausted) {
+	    final int size = Math.min(fetchSize, maxResults - fetched);
+	    final List<T> rows = size > 0 ? query.setFirstResult(firstResult + fetched).setMaxResults(size)
+		    .getResultList() : Collections.<T> emptyList();
+	    fetched += rows.size();
+	    exhausted = rows.size() < fetchSize;
+	    page = rows.iterator();
+	}
+	return page.hasNext();
+    }
+
+    @Override
+    public T next() {
+	if (!hasNext()) {
+	    throw new NoSuchElementException();
+	}
+	return page.next();
+    }
+
+    @Override
+    public void close() {
+	page = Collections.emptyIterator();
+	exhausted = true;
+    }
+}
@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright (c) 2018, Xavier Miret Andres <xavier.mires@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package org.matcher.stream;
+
+import java.util.NoSuchElementException;
+
+import javax.persistence.PersistenceException;
+import javax.persistence.TypedQuery;
+
+import org.hibernate.Query;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+
+/**
+ * A cursor over a hibernate forward only {@link ScrollableResults}.
+ * <p>
+ * This is the only class referencing hibernate, it must not be loaded unless hibernate is available.
+ */
+class ScrollableCursor<T> implements Cursor<T> {
+
+    private final ScrollableResults results;
+    private Boolean hasNext = null;
+
+    private ScrollableCursor(ScrollableResults results) {
+	this.results = results;
+    }
+
+    /**
+     * Returns null if the {@code query} is not a hibernate query.
+     */
+    static <T> Cursor<T> open(TypedQuery<T> query, int fetchSize) {
+	final Query hibernateQuery;
+	try {
+	    hibernateQuery = query.unwrap(Query.class);
+	} catch (PersistenceException e) {
+	    return null;
+	}
+	hibernateQuery.setFetchSize(fetchSize);
+	return new ScrollableCursor<>(hibernateQuery.scroll(ScrollMode.FORWARD_ONLY));
+    }
+
+    @Override
+    public boolean hasNext() {
+	if (hasNext == null) {
+	    hasNext = results.next();
+	}
+	return hasNext;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T next() {
+	if (!hasNext()) {
+	    throw new NoSuchElementException();
+	}
+	hasNext = null;
+	final Object[] row = results.get();
+	return (T) (row.length == 1 ? row[0] : row);
+    }
+
+    @Override
+    public void close() {
+	results.close();
+    }
+}
@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * Copyright (c) 2018, Xavier Miret Andres <xavier.mires@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package org.matcher.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import javax.persistence.TypedQuery;
+
+/**
+ * A typed query returning each result instance once, i.e. the root entities repeated by a collection fetch join.
+ */
+public class DistinctTypedQuery<T> extends TransformableTypedQuery<T, T> {
+
+    public DistinctTypedQuery(TypedQuery<T> query) {
+	super(query, result -> result);
+    }
+
+    @Override
+    public List<T> getResultList() {
+	final List<T> results = super.getResultList();
+	final Set<T> distinct = Collections.newSetFromMap(new IdentityHashMap<>(results.size()));
+	final List<T> distinctResults = new ArrayList<>(results.size());
+	for (T result : results) {
+	    if (distinct.add(result)) {
+		distinctResults.add(result);
+	    }
+	}
+	return distinctResults;
+    }
+
+    @Override
+    public T getSingleResult() {
+	return getSingleListResult();
+    }
+}
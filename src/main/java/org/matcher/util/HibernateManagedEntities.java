@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright (c) 2018, Xavier Miret Andres <xavier.mires@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package org.matcher.util;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+
+import org.hibernate.engine.spi.EntityEntry;
+import org.hibernate.engine.spi.EntityKey;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.engine.spi.Status;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.proxy.HibernateProxy;
+
+/**
+ * This is the only class referencing hibernate, it must not be loaded unless hibernate is available.
+ */
+class HibernateManagedEntities {
+
+    static <T> T getManaged(EntityManager entityManager, Class<T> type, Object id) {
+	final SessionImplementor session;
+	try {
+	    session = entityManager.unwrap(SessionImplementor.class);
+	} catch (PersistenceException e) {
+	    return null;
+	}
+	final EntityPersister persister = session.getFactory().getEntityPersister(type.getName());
+	final EntityKey key = session.generateEntityKey((Serializable) id, persister);
+	final Object entity = session.getPersistenceContext().getEntity(key);
+	if (!type.isInstance(entity)) {
+	    return null;
+	}
+	// removed entities are looked up in the database, as find would do
+	final EntityEntry entry = session.getPersistenceContext().getEntry(entity);
+	return entry != null && (entry.getStatus() == Status.DELETED || entry.getStatus() == Status.GONE) ? null
+		: type.cast(entity);
+    }
+
+    static boolean detachAll(EntityManager entityManager, Class<?> type) {
+	final SessionImplementor session;
+	try {
+	    session = entityManager.unwrap(SessionImplementor.class);
+	} catch (PersistenceException e) {
+	    return false;
+	}
+	final List<Object> managed = new ArrayList<>();
+	for (Object entity : session.getPersistenceContext().getEntitiesByKey().values()) {
+	    if (type.isInstance(entity)) {
+		managed.add(entity);
+	    }
+	}
+	managed.forEach(entityManager::detach);
+	return true;
+    }
+
+    static Object getProxyIdentifier(Object entity) {
+	return entity instanceof HibernateProxy ? ((HibernateProxy) entity).getHibernateLazyInitializer().getIdentifier()
+		: null;
+    }
+
+    static Object unproxy(Object entity) {
+	return entity instanceof HibernateProxy
+		? ((HibernateProxy) entity).getHibernateLazyInitializer().getImplementation() : entity;
+    }
+}
@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright (c) 2018, Xavier Miret Andres <xavier.mires@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package org.matcher.util;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceUnitUtil;
+
+/**
+ * Looks up entities in the persistence context (first level cache) by type and identifier, without hitting the
+ * database.
+ * <p>
+ * JPA has no such operations, they are only possible with hibernate. With other providers lookups always miss.
+ */
+public class ManagedEntities {
+
+    private static final boolean hibernate = isPresent("org.hibernate.engine.spi.SessionImplementor");
+
+    /**
+     * Returns the entity of type {@code type} with identifier {@code id} if it is managed by the
+     * {@code entityManager}, otherwise null.
+     */
+    public static <T> T getManaged(EntityManager entityManager, Class<T> type, Object id) {
+	return hibernate ? HibernateManagedEntities.getManaged(entityManager, type, id) : null;
+    }
+
+    /**
+     * Detaches all entities of type {@code type} managed by the {@code entityManager}, or clears it altogether if the
+     * provider can't tell them apart.
+     */
+    public static void detachAll(EntityManager entityManager, Class<?> type) {
+	if (!hibernate || !HibernateManagedEntities.detachAll(entityManager, type)) {
+	    entityManager.clear();
+	}
+    }
+
+    /**
+     * Returns the identifier of the {@code entity}, without initializing it if it is a lazy proxy.
+     */
+    public static Object getIdentifier(PersistenceUnitUtil persistenceUnitUtil, Object entity) {
+	final Object id = hibernate ? HibernateManagedEntities.getProxyIdentifier(entity) : null;
+	return id != null ? id : persistenceUnitUtil.getIdentifier(entity);
+    }
+
+    /**
+     * Returns the entity behind the {@code entity} lazy proxy, initializing it, or the {@code entity} itself if it is
+     * not a proxy.
+     */
+    public static Object unproxy(Object entity) {
+	return hibernate ? HibernateManagedEntities.unproxy(entity) : entity;
+    }
+
+    private static boolean isPresent(String className) {
+	try {
+	    Class.forName(className, false, ManagedEntities.class.getClassLoader());
+	    return true;
+	} catch (ClassNotFoundException | LinkageError e) {
+	    return false;
+	}
+    }
+}
@@ -1,5 +1,6 @@
 package org.matcher.util;
 
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
@@ -10,6 +11,8 @@ import java.util.stream.Collectors;
 
 import javax.persistence.FlushModeType;
 import javax.persistence.LockModeType;
+import javax.persistence.NoResultException;
+import javax.persistence.NonUniqueResultException;
 import javax.persistence.Parameter;
 import javax.persistence.TemporalType;
 import javax.persistence.TypedQuery;
@@ -24,6 +27,13 @@ public class TransformableTypedQuery<T, F> implements TypedQuery<T> {
 	this.transformer = tranformer;
     }
 
+    /**
+     * Returns the wrapped query.
+     */
+    public TypedQuery<F> getDelegate() {
+	return delegate;
+    }
+
     @Override
     public int executeUpdate() {
 	return delegate.executeUpdate();
@@ -105,8 +115,15 @@ public class TransformableTypedQuery<T, F> implements TypedQuery<T> {
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public List<T> getResultList() {
-	return delegate.getResultList().stream().map(transformer).collect(Collectors.toList());
+	final List<Object> results = (List<Object>) delegate.getResultList();
+	if (results instanceof ArrayList) {
+	    // transform in place, the provider's list isn't referenced anywhere else
+	    results.replaceAll(result -> transformer.apply((F) result));
+	    return (List<T>) results;
+	}
+	return results.stream().map(result -> (T) transformer.apply((F) result)).collect(Collectors.toList());
     }
 
     @Override
@@ -114,6 +131,20 @@ public class TransformableTypedQuery<T, F> implements TypedQuery<T> {
 	return transformer.apply(delegate.getSingleResult());
     }
 
+    /**
+     * Returns the only element of {@link #getResultList()}, for subclasses whose results aren't the wrapped query's.
+     */
+    protected T getSingleListResult() {
+	final List<T> results = getResultList();
+	if (results.isEmpty()) {
+	    throw new NoResultException("No entity found for query.");
+	}
+	if (results.size() > 1) {
+	    throw new NonUniqueResultException("Result returns more than one element.");
+	}
+	return results.get(0);
+    }
+
     @Override
     public TypedQuery<T> setMaxResults(int maxResult) {
 	delegate.setMaxResults(maxResult);
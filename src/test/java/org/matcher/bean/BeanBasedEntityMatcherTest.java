@@ -30,7 +30,9 @@ import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.lessThan;
 import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 import static org.matcher.bean.BeanBasedExpressions.avg;
 import static org.matcher.bean.BeanBasedExpressions.between;
 import static org.matcher.bean.BeanBasedExpressions.count;
@@ -54,6 +56,7 @@ import static org.matcher.expression.Expressions.not;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import javax.persistence.EntityManager;
 import javax.persistence.Persistence;
@@ -195,7 +198,7 @@ public class BeanBasedEntityMatcherTest {
 	final List<TestClass> tcs = matcher.findAny(TestClass.class,
 		matching(tc.getFoo(), lt(4)).or(tc.getBar(), eq("Bye")));
 	for (TestClass t : tcs) {
-	    final boolean lt4 = tc.getFoo() < 4;
+	    final boolean lt4 = t.getFoo() < 4;
 	    final boolean isBye = "Bye".equals(t.getBar());
 	    assertThat(lt4 || isBye, is(true));
 	}
@@ -407,4 +410,89 @@ public class BeanBasedEntityMatcherTest {
 
 	assertThat(testee.size(), is(4));
     }
+
+    @Test
+    public void testGetterReferences() {
+	final TestClass testee = matcher.findUnique(TestClass.class,
+		matching(TestClass::getFoo, lt(4)).and(TestClass::getBar, eq("Bye")));
+	assertThat(testee.getFoo(), is(lessThan(4)));
+	assertThat(testee.getBar(), is("Bye"));
+    }
+
+    @Test
+    public void testGetterReferencesSelection() {
+	final List<Object[]> testee = matcher.findAny(Object[].class, //
+		selection(TestOther::getBar).and(count(TestOther::getBar)), //
+		groupBy(TestOther::getBar).orderBy(count(TestOther::getBar)));
+	assertThat(testee.size(), is(2));
+	assertThat((String) testee.get(0)[0], is("Hello"));
+	assertThat((Long) testee.get(1)[1], is(3L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetterReferencesRejectLambdas() {
+	matching((TestClass t) -> t.getBar(), eq("Hello"));
+    }
+
+    @Test
+    public void testImplicitLeftoversRejected() {
+	final TestClass tc = BeanBasedMatcher.matcher(TestClass.class);
+	tc.getFoo(); // leftover
+	try {
+	    matcher.findAny(TestClass.class, matching(tc.getBar(), eq("Hello")));
+	    fail();
+	} catch (IllegalStateException e) {
+	}
+	// discarded, the thread can query again
+	assertThat(InvokationCapturer.getLastCapture(), is(nullValue()));
+	assertThat(matcher.findAny(TestClass.class, matching(tc.getBar(), eq("Hello"))).size(), is(1));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCaptureScopeLeftovers() {
+	final TestClass tc = BeanBasedMatcher.matcher(TestClass.class);
+	try (CaptureScope scope = InvokationCapturer.openScope()) {
+	    matcher.findAny(TestClass.class, matching(tc.getBar(), eq("Hello")));
+	    assertThat(scope.isEmpty(), is(true));
+	    tc.getFoo(); // leftover
+	}
+    }
+
+    @Test
+    public void testCaptureScopeGrows() {
+	final TestClass tc = BeanBasedMatcher.matcher(TestClass.class);
+	try (CaptureScope scope = InvokationCapturer.openScope(1)) {
+	    final Object[] testee = matcher.findUnique(Object[].class, selection(tc.getFoo(), tc.getBar()),
+		    matching(tc.getBar(), eq("Hello")));
+	    assertThat((String) testee[1], is("Hello"));
+	}
+    }
+
+    @Test
+    public void testWarmUp() throws Exception {
+	final Long millis = matcher.warmUp().get(10, TimeUnit.SECONDS);
+	assertThat(millis, is(greaterThanOrEqualTo(0L)));
+	final TestJoin tj = BeanBasedMatcher.matcher(TestJoin.class);
+	assertThat(matcher.findAny(TestClass.class, matching(tj.getBar())).size(), is(2));
+    }
+
+    @Test
+    public void testSharedMatchers() {
+	final TestClass first = BeanBasedMatcher.sharedMatcher(TestClass.class);
+	final TestClass second = BeanBasedMatcher.sharedMatcher(TestClass.class);
+	assertThat(first, is(sameInstance(second)));
+
+	final TestClass testee = matcher.findUnique(TestClass.class,
+		matching(first.getFoo(), lt(4)).and(second.getBar(), eq("Bye")));
+	assertThat(testee.getFoo(), is(lessThan(4)));
+	assertThat(testee.getBar(), is("Bye"));
+
+	final Object[] fooAndBar = matcher.findUnique(Object[].class, selection(second.getFoo(), first.getBar()),
+		matching(first.getFoo(), between(3, 5)).and(second.getBar(), eq("Hello")));
+	assertThat((Integer) fooAndBar[0], is(5));
+	assertThat((String) fooAndBar[1], is("Hello"));
+
+	assertThat(BeanBasedMatcher.matcher(TestClass.class),
+		is(Matchers.not(sameInstance(BeanBasedMatcher.matcher(TestClass.class)))));
+    }
 }
@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright (c) 2018, Xavier Miret Andres <xavier.mires@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package org.matcher.bean;
+
+import static org.matcher.bean.BeanBasedExpressions.eq;
+import static org.matcher.bean.BeanBasedExpressions.gt;
+import static org.matcher.bean.BeanBasedExpressions.matching;
+
+import java.util.concurrent.TimeUnit;
+
+import org.matcher.TestClass;
+import org.matcher.parameter.ParameterBindingImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares building a bean based where clause through matcher proxies against building it through getter method
+ * references.
+ * <p>
+ * Run with {@code java -cp <test classpath> org.matcher.bean.GetterBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class GetterBenchmark {
+
+    private final TestClass reused = BeanBasedMatcher.matcher(TestClass.class);
+
+    @Benchmark
+    public String proxy() {
+	final TestClass tc = BeanBasedMatcher.matcher(TestClass.class);
+	return matching(tc.getBar(), eq("Hello")).and(tc.getFoo(), gt(3)).build(new ParameterBindingImpl());
+    }
+
+    @Benchmark
+    public String reusedProxy() {
+	return matching(reused.getBar(), eq("Hello")).and(reused.getFoo(), gt(3)).build(new ParameterBindingImpl());
+    }
+
+    @Benchmark
+    public String getter() {
+	return matching(TestClass::getBar, eq("Hello")).and(TestClass::getFoo, gt(3)).build(new ParameterBindingImpl());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+	final ChainedOptionsBuilder options = new OptionsBuilder().include(GetterBenchmark.class.getSimpleName());
+	if (!System.getProperty("java.version").startsWith("1.")) {
+	    // javassist defines the proxy classes through ClassLoader#defineClass
+	    options.jvmArgsAppend("--add-opens=java.base/java.lang=ALL-UNNAMED");
+	}
+	new Runner(options.build()).run();
+    }
+}
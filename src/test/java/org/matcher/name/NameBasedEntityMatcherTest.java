@@ -31,6 +31,9 @@ import static org.hamcrest.Matchers.lessThan;
 import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.matcher.bulk.BulkUpdate.minus;
+import static org.matcher.bulk.BulkUpdate.plus;
 import static org.matcher.expression.Expressions.closure;
 import static org.matcher.expression.Expressions.count;
 import static org.matcher.expression.Expressions.not;
@@ -52,22 +55,69 @@ import static org.matcher.name.NameBasedExpressions.orderBy;
 import static org.matcher.name.NameBasedExpressions.selection;
 import static org.matcher.name.NameBasedExpressions.startsWith;
 import static org.matcher.name.NameBasedExpressions.sum;
+import static org.matcher.option.FetchOption.fetch;
+import static org.matcher.option.FetchOption.loadGraph;
+import static org.matcher.option.QueryOption.cacheRetrieveMode;
+import static org.matcher.option.QueryOption.fetchSize;
+import static org.matcher.option.QueryOption.firstResult;
+import static org.matcher.option.QueryOption.flushMode;
+import static org.matcher.option.QueryOption.maxResults;
+import static org.matcher.option.QueryOption.readOnly;
+import static org.matcher.option.QueryOption.timeout;
 
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import javax.persistence.CacheRetrieveMode;
+import javax.persistence.EntityGraph;
 import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.FlushModeType;
+import javax.persistence.NoResultException;
 import javax.persistence.Persistence;
+import javax.persistence.PersistenceUnitUtil;
+import javax.persistence.QueryTimeoutException;
+import javax.persistence.TypedQuery;
 
 import org.h2.jdbcx.JdbcDataSource;
 import org.hamcrest.Matchers;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.matcher.EntityMatcher;
+import org.matcher.TestChild;
 import org.matcher.TestClass;
 import org.matcher.TestJoin;
 import org.matcher.TestOther;
+import org.matcher.TestParent;
+import org.matcher.TestSummary;
+import org.matcher.async.AsyncEntityMatcher;
+import org.matcher.async.QueryCoalescer;
+import org.matcher.batch.BatchLoader;
+import org.matcher.bulk.BatchReport;
+import org.matcher.cache.MissCache;
+import org.matcher.cache.ResultCache;
+import org.matcher.page.Page;
+import org.matcher.page.PageRequest;
+import org.matcher.page.PageRequest.CountMode;
+import org.matcher.parameter.ParameterBinding;
 import org.matcher.parameter.ParameterBindingImpl;
+import org.matcher.stream.Columns;
 
 public class NameBasedEntityMatcherTest {
     static EntityMatcher matcher;
@@ -332,6 +382,304 @@ public class NameBasedEntityMatcherTest {
 	assertThat(tos.size(), is(2));
     }
 
+    @Test
+    public void testConstructorSelection() {
+	final List<TestSummary> summaries = matcher.findAny(TestSummary.class,
+		selection(TestOther.class, "foo", "bar").into(TestSummary.class), matching("bar", eq("Snake")));
+	assertThat(summaries.stream().map(TestSummary::getCount).collect(Collectors.toList()),
+		containsInAnyOrder(1L, 2L, 3L));
+
+	final List<TestSummary> groups = matcher.findAny(TestSummary.class,
+		selection(TestOther.class, "bar").and(count("bar")).into(TestSummary.class), groupBy("bar"));
+	assertThat(groups.stream().map(s -> s.getBar() + s.getCount()).collect(Collectors.toList()),
+		containsInAnyOrder("Snake3", "Hello1"));
+
+	try {
+	    matcher.findAny(TestSummary.class, selection(TestOther.class, "bar", "foo").into(TestSummary.class),
+		    matching("bar", eq("Snake")));
+	    fail();
+	} catch (IllegalArgumentException e) {
+	    // no (String, int) constructor
+	}
+    }
+
+    @Test
+    public void testPrimitiveColumns() {
+	assertThat(Arrays.stream(matcher.findLongs(selection(TestOther.class, "foo"), matching("bar", eq("Snake"))))
+		.boxed().collect(Collectors.toList()), containsInAnyOrder(1L, 2L, 3L));
+	assertThat(matcher.findInts(selection(TestOther.class, "foo"), orderBy("foo")), is(new int[] { 1, 2, 3, 6 }));
+	assertThat(matcher.findDoubles(selection(TestOther.class, "foo"), matching("foo", eq(42))).length, is(0));
+
+	final Columns columns = matcher.findColumns(
+		selection(count(TestOther.class, "bar"), avg(TestOther.class, "foo")), groupBy("bar"));
+	assertThat(columns.size(), is(2));
+	assertThat(columns.getColumnCount(), is(2));
+	assertThat(columns.isIntegral(0), is(true));
+	assertThat(columns.isIntegral(1), is(false));
+	try {
+	    matcher.findLongs(selection(TestOther.class, "bar"), matching("foo", eq(6)));
+	    fail();
+	} catch (IllegalArgumentException e) {
+	    // not numeric
+	}
+	try {
+	    new Columns().add(BigInteger.ONE.shiftLeft(64));
+	    fail();
+	} catch (IllegalArgumentException e) {
+	    // truncated otherwise
+	}
+	try {
+	    new Columns().add(new BigDecimal("0.12345678901234567890123"));
+	    fail();
+	} catch (IllegalArgumentException e) {
+	    // rounded otherwise
+	}
+    }
+
+    @Test
+    public void testOptions() {
+	final List<TestOther> snakes = matcher.findAny(TestOther.class, matching("bar", eq("Snake")), fetchSize(2),
+		readOnly(), timeout(10, TimeUnit.SECONDS), cacheRetrieveMode(CacheRetrieveMode.BYPASS),
+		flushMode(FlushModeType.COMMIT), firstResult(1), maxResults(1));
+	assertThat(snakes.size(), is(1));
+
+	final EntityMatcher testee = new EntityMatcher(matcher.getEntityManagerFactory().createEntityManager());
+	try {
+	    testee.setDefaultOptions(maxResults(2));
+	    assertThat(testee.findAny(TestOther.class).size(), is(2));
+	    // query options override the default ones
+	    assertThat(testee.findAny(TestOther.class, matching("bar", eq("Snake")), maxResults(3)).size(), is(3));
+	    assertThat(testee.getDefaultOptions(), contains(maxResults(2)));
+	} finally {
+	    testee.close();
+	}
+    }
+
+    @Test
+    public void testCreateQueryHook() {
+	final AtomicInteger created = new AtomicInteger();
+	final EntityMatcher testee = new EntityMatcher(matcher.getEntityManagerFactory().createEntityManager()) {
+	    @Override
+	    protected <T> TypedQuery<T> createQuery(String queryTxt, ParameterBinding bindings, Class<T> returnType) {
+		created.incrementAndGet();
+		return super.createQuery(queryTxt, bindings, returnType);
+	    }
+	};
+	try {
+	    // options apply to the hook queries
+	    assertThat(testee.findAny(TestOther.class, matching("bar", eq("Snake")), maxResults(1)).size(), is(1));
+	    assertThat(testee.count(TestOther.class, matching("bar", eq("Snake"))), is(greaterThan(1L)));
+	    assertThat(created.get(), is(2));
+	} finally {
+	    testee.close();
+	}
+    }
+
+    @Test
+    public void testFetchJoin() {
+	final EntityMatcher testee = new EntityMatcher(matcher.getEntityManagerFactory().createEntityManager());
+	try {
+	    testee.getTransaction().begin();
+	    final TestParent parent = new TestParent("Fetched");
+	    testee.persist(parent);
+	    testee.persist(new TestChild("First", parent));
+	    testee.persist(new TestChild("Second", parent));
+	    testee.persist(new TestParent("Childless"));
+	    testee.getTransaction().commit();
+	    testee.clear();
+
+	    final PersistenceUnitUtil util = testee.getEntityManagerFactory().getPersistenceUnitUtil();
+	    final TestParent lazy = testee.findUnique(TestParent.class, matching("name", eq("Fetched")));
+	    assertThat(util.isLoaded(lazy, "children"), is(false));
+	    testee.clear();
+
+	    final TestParent fetched = testee.findUnique(TestParent.class, matching("name", eq("Fetched")),
+		    fetch("children"));
+	    assertThat(util.isLoaded(fetched, "children"), is(true));
+	    assertThat(fetched.getChildren().size(), is(2));
+	    testee.clear();
+
+	    // one row per child, but a single parent each
+	    assertThat(testee.findAny(TestParent.class, matching("name", in(Arrays.asList("Childless", "Fetched"))),
+		    fetch("children")).stream().map(TestParent::getName).collect(Collectors.toList()),
+		    containsInAnyOrder("Childless", "Fetched"));
+	    testee.clear();
+
+	    final EntityGraph<TestParent> graph = testee.createEntityGraph(TestParent.class);
+	    graph.addAttributeNodes("children");
+	    final TestParent graphed = testee.findUnique(TestParent.class, matching("name", eq("Fetched")),
+		    loadGraph(graph));
+	    assertThat(util.isLoaded(graphed, "children"), is(true));
+	} finally {
+	    testee.close();
+	}
+    }
+
+    @Test
+    public void testLoadAssociation() {
+	final EntityMatcher testee = new EntityMatcher(matcher.getEntityManagerFactory().createEntityManager());
+	try {
+	    testee.getTransaction().begin();
+	    final TestParent two = new TestParent("Two");
+	    final TestParent one = new TestParent("One");
+	    testee.persist(two);
+	    testee.persist(one);
+	    testee.persist(new TestParent("None"));
+	    testee.persist(new TestChild("Two-1", two));
+	    testee.persist(new TestChild("Two-2", two));
+	    testee.persist(new TestChild("One-1", one));
+	    testee.getTransaction().commit();
+	    testee.clear();
+
+	    final PersistenceUnitUtil util = testee.getEntityManagerFactory().getPersistenceUnitUtil();
+	    final List<TestParent> parents = testee.findAny(TestParent.class,
+		    matching("name", in(Arrays.asList("Two", "One", "None"))));
+	    final Map<Object, List<TestChild>> children = testee.loadAssociation(TestParent.class, parents, "children",
+		    TestChild.class, 2);
+	    for (TestParent parent : parents) {
+		final int expected = parent.getName().equals("Two") ? 2 : parent.getName().equals("One") ? 1 : 0;
+		assertThat(children.get(util.getIdentifier(parent)).size(), is(expected));
+		// wired into the managed parents
+		assertThat(util.isLoaded(parent, "children"), is(true));
+	    }
+	    testee.clear();
+
+	    final List<TestChild> orphans = testee.findAny(TestChild.class,
+		    matching("name", in(Arrays.asList("Two-1", "Two-2", "One-1"))));
+	    final Map<Object, List<TestParent>> owners = testee.loadAssociation(TestChild.class, orphans, "parent",
+		    TestParent.class);
+	    for (TestChild child : orphans) {
+		final List<TestParent> owner = owners.get(util.getIdentifier(child));
+		assertThat(owner.size(), is(1));
+		assertThat(child.getName().startsWith(owner.get(0).getName()), is(true));
+		assertThat(util.isLoaded(child.getParent()), is(true));
+	    }
+	} finally {
+	    testee.close();
+	}
+    }
+
+    @Test
+    public void testResultCache() {
+	final EntityMatcher testee = new EntityMatcher(matcher.getEntityManagerFactory().createEntityManager());
+	try {
+	    testee.getTransaction().begin();
+	    testee.persist(new TestParent("Cached-1"));
+	    testee.getTransaction().commit();
+
+	    final ResultCache cache = new ResultCache(2, 1, TimeUnit.HOURS, TestParent.class);
+	    testee.setResultCache(cache);
+	    final List<TestParent> first = testee.findAny(TestParent.class, matching("name", startsWith("Cached")));
+	    final List<TestParent> second = testee.findAny(TestParent.class, matching("name", startsWith("Cached")));
+	    assertThat(first.size(), is(1));
+	    assertThat(second.get(0) == first.get(0), is(true));
+	    assertThat(testee.contains(first.get(0)), is(false));
+	    assertThat(cache.getMissCount(), is(1L));
+	    assertThat(cache.getHitCount(), is(1L));
+
+	    // uncached types bypass the cache
+	    testee.findAny(TestOther.class);
+	    assertThat(cache.getSize(), is(1L));
+
+	    // written types invalidate their queries
+	    testee.getTransaction().begin();
+	    testee.persist(new TestParent("Cached-2"));
+	    testee.getTransaction().commit();
+	    assertThat(cache.getSize(), is(0L));
+	    assertThat(testee.findAny(TestParent.class, matching("name", startsWith("Cached"))).size(), is(2));
+
+	    testee.findAny(TestParent.class, matching("name", eq("Cached-1")));
+	    testee.findAny(TestParent.class, matching("name", eq("Cached-2")));
+	    assertThat(cache.getSize(), is(2L));
+	    assertThat(cache.getEvictionCount(), is(1L));
+
+	    assertThat(testee.delete(TestParent.class).where(matching("name", startsWith("Cached"))), is(2));
+	    assertThat(cache.getSize(), is(0L));
+	    assertThat(testee.findAny(TestParent.class, matching("name", startsWith("Cached"))).isEmpty(), is(true));
+	} finally {
+	    testee.close();
+	}
+    }
+
+    @Test
+    public void testResultCacheFetchJoin() {
+	final EntityMatcher testee = new EntityMatcher(matcher.getEntityManagerFactory().createEntityManager());
+	try {
+	    testee.getTransaction().begin();
+	    final TestParent parent = new TestParent("CachedParent");
+	    testee.persist(parent);
+	    testee.persist(new TestChild("CachedChild-1", parent));
+	    testee.getTransaction().commit();
+	    testee.clear();
+
+	    final ResultCache cache = new ResultCache(10, 1, TimeUnit.HOURS, TestParent.class, TestChild.class);
+	    testee.setResultCache(cache);
+	    assertThat(testee.findUnique(TestParent.class, matching("name", eq("CachedParent")), fetch("children"))
+		    .getChildren().size(), is(1));
+	    assertThat(cache.getSize(), is(1L));
+
+	    // the fetched children invalidate the parents query
+	    testee.getTransaction().begin();
+	    testee.persist(new TestChild("CachedChild-2", testee.merge(parent)));
+	    testee.getTransaction().commit();
+	    assertThat(cache.getSize(), is(0L));
+	    assertThat(testee.findUnique(TestParent.class, matching("name", eq("CachedParent")), fetch("children"))
+		    .getChildren().size(), is(2));
+
+	    // load graphs aren't cached
+	    final EntityGraph<TestParent> graph = testee.createEntityGraph(TestParent.class);
+	    graph.addAttributeNodes("children");
+	    testee.findUnique(TestParent.class, matching("name", eq("CachedParent")), loadGraph(graph));
+	    assertThat(cache.getSize(), is(1L));
+
+	    // a parent only cache doesn't cache queries fetching children
+	    testee.setResultCache(new ResultCache(10, 1, TimeUnit.HOURS, TestParent.class));
+	    testee.findUnique(TestParent.class, matching("name", eq("CachedParent")), fetch("children"));
+	    assertThat(testee.getResultCache().getSize(), is(0L));
+	} finally {
+	    testee.close();
+	}
+    }
+
+    @Test
+    public void testMissCache() {
+	final EntityMatcher testee = new EntityMatcher(matcher.getEntityManagerFactory().createEntityManager());
+	try {
+	    final MissCache cache = new MissCache(10, 1, TimeUnit.HOURS);
+	    testee.setMissCache(cache);
+	    for (int i = 0; i < 2; i++) {
+		try {
+		    testee.findUnique(TestParent.class, matching("name", eq("Missing")));
+		    fail();
+		} catch (NoResultException e) {
+		}
+	    }
+	    assertThat(cache.getSize(), is(1L));
+	    assertThat(cache.getHitCount(), is(1L));
+
+	    // transactions neither read nor record misses
+	    testee.getTransaction().begin();
+	    try {
+		testee.findUnique(TestParent.class, matching("name", eq("Absent")));
+		fail();
+	    } catch (NoResultException e) {
+	    }
+	    testee.getTransaction().commit();
+	    assertThat(cache.getSize(), is(1L));
+
+	    // persisted types forget their misses
+	    testee.getTransaction().begin();
+	    testee.persist(new TestParent("Missing"));
+	    testee.getTransaction().commit();
+	    assertThat(cache.getSize(), is(0L));
+	    assertThat(testee.findUnique(TestParent.class, matching("name", eq("Missing"))).getName(), is("Missing"));
+
+	    assertThat(testee.delete(TestParent.class).where(matching("name", eq("Missing"))), is(1));
+	} finally {
+	    testee.close();
+	}
+    }
+
     @Test
     public void testOrderBy() {
 	final List<TestClass> tos = matcher.findAny(TestClass.class, orderBy("foo"));
@@ -371,6 +719,403 @@ public class NameBasedEntityMatcherTest {
 	assertThat(testee.size(), is(4));
     }
 
+    @Test
+    public void testFindStream() {
+	final List<TestClass> testee;
+	try (Stream<TestClass> stream = matcher.findStream(TestClass.class, matching("foo", gt(2)), 2)) {
+	    testee = stream.collect(Collectors.toList());
+	}
+	assertThat(testee.size(), is(3));
+	for (TestClass tc : testee) {
+	    assertThat(tc.getFoo(), is(greaterThan(2)));
+	    assertThat(matcher.contains(tc), is(false));
+	}
+    }
+
+    @Test
+    public void testFindStreamProjection() {
+	try (Stream<String> stream = matcher.findStream(String.class, selection(TestOther.class, "bar"), orderBy("foo"),
+		1)) {
+	    assertThat(stream.collect(Collectors.toList()), contains("Snake", "Snake", "Snake", "Hello"));
+	}
+    }
+
+    @Test
+    public void testForEach() {
+	final List<Integer> foos = new ArrayList<>();
+	matcher.forEach(TestJoin.class, orderBy("foo"), 2, tj -> foos.add(tj.getFoo()));
+	assertThat(foos, contains(3, 6, 7));
+    }
+
+    @Test
+    public void testKeysetPage() {
+	final Page<TestOther> first = matcher.findPage(TestOther.class, orderBy("bar", "foo"), 2);
+	assertThat(first.getContent().size(), is(2));
+	assertThat(first.getContent().get(0).getBar(), is("Hello"));
+	assertThat(first.hasNext(), is(true));
+	assertThat(Arrays.asList(first.getNextKey()), contains("Snake", 1));
+
+	final Page<TestOther> second = matcher.findPage(TestOther.class, orderBy("bar", "foo").after(first.getNextKey()),
+		2);
+	assertThat(second.getContent().size(), is(2));
+	assertThat(second.getContent().get(0).getFoo(), is(2));
+	assertThat(second.getContent().get(1).getFoo(), is(3));
+	assertThat(second.hasNext(), is(false));
+    }
+
+    @Test
+    public void testKeysetPageProxies() {
+	final Object id = matcher.getEntityManagerFactory().getPersistenceUnitUtil()
+		.getIdentifier(matcher.findPage(TestOther.class, orderBy("bar", "foo"), 2).getContent().get(1));
+	final EntityMatcher testee = new EntityMatcher(matcher.getEntityManagerFactory().createEntityManager());
+	try {
+	    // the query returns the proxy already in the persistence context
+	    testee.getReference(TestOther.class, id);
+	    final Page<TestOther> page = testee.findPage(TestOther.class, orderBy("bar", "foo"), 2);
+	    assertThat(Arrays.asList(page.getNextKey()), contains("Snake", 1));
+	} finally {
+	    testee.close();
+	}
+    }
+
+    @Test
+    public void testKeysetPageWhere() {
+	final Page<TestOther> page = matcher.findPage(TestOther.class, matching("bar", eq("Snake")),
+		orderBy("foo").after(1), 5);
+	assertThat(page.getContent().size(), is(2));
+	assertThat(page.getContent().get(0).getFoo(), is(2));
+	assertThat(page.hasNext(), is(false));
+    }
+
+    @Test
+    public void testOffsetPageDistinct() {
+	final Page<String> page = matcher.findPage(String.class, selection(distinct(TestOther.class, "bar")),
+		matching("foo", gt(0)), orderBy("bar"), new PageRequest(0, 1));
+	assertThat(page.getContent(), contains("Hello"));
+	assertThat(page.getTotal(), is(2L));
+	assertThat(page.hasNext(), is(true));
+    }
+
+    @Test
+    public void testOffsetPage() {
+	final Page<TestOther> page = matcher.findPage(TestOther.class, matching("bar", eq("Snake")), orderBy("foo"),
+		new PageRequest(0, 2));
+	assertThat(page.getContent().size(), is(2));
+	assertThat(page.getContent().get(0).getFoo(), is(1));
+	assertThat(page.getTotal(), is(3L));
+	assertThat(page.hasNext(), is(true));
+    }
+
+    @Test
+    public void testOffsetPageProjection() {
+	final Page<String> page = matcher.findPage(String.class, selection(TestOther.class, "bar"), matching("foo", gt(1)),
+		orderBy("foo"), new PageRequest(1, 2, CountMode.IF_FULL));
+	assertThat(page.getContent(), contains("Hello"));
+	assertThat(page.getTotal(), is(3L));
+	assertThat(page.hasNext(), is(false));
+    }
+
+    @Test
+    public void testOffsetPageWithoutCount() {
+	final Page<TestOther> page = matcher.findPage(TestOther.class, matching("bar", eq("Snake")), orderBy("foo"),
+		new PageRequest(1, 1, CountMode.NONE));
+	assertThat(page.getContent().get(0).getFoo(), is(2));
+	assertThat(page.getTotal(), is(Page.UNKNOWN_TOTAL));
+	assertThat(page.hasNext(), is(true));
+    }
+
+    @Test
+    public void testAsync() throws Exception {
+	try (AsyncEntityMatcher async = new AsyncEntityMatcher(matcher.getEntityManagerFactory(), 2, 8)) {
+	    final CompletableFuture<List<TestClass>> tcs = async.findAnyAsync(TestClass.class, matching("foo", gt(2)));
+	    final CompletableFuture<TestJoin> tj = async.findUniqueAsync(TestJoin.class, matching("bar", eq("Rabbit")));
+
+	    assertThat(tcs.get().size(), is(3));
+	    assertThat(tj.get().getFoo(), is(6));
+	    assertThat(async.getEntityManagerPool().getSize(), is(lessThanOrEqualTo(2)));
+	    assertThat(async.getRejectedCount(), is(0L));
+	}
+    }
+
+    @Test
+    public void testAsyncRejection() throws Exception {
+	final CountDownLatch latch = new CountDownLatch(1);
+	try (AsyncEntityMatcher async = new AsyncEntityMatcher(matcher.getEntityManagerFactory(), 1, 1)) {
+	    final CompletableFuture<Boolean> blocking = async.submit(m -> awaitQuietly(latch));
+	    final CompletableFuture<Boolean> queued = async.submit(m -> true);
+	    final CompletableFuture<Boolean> rejected = async.submit(m -> true);
+
+	    assertThat(rejected.isCompletedExceptionally(), is(true));
+	    assertThat(async.getRejectedCount(), is(1L));
+	    latch.countDown();
+	    assertThat(blocking.get() && queued.get(), is(true));
+	}
+    }
+
+    @Test
+    public void testAsyncDiscardFailsFuture() throws Exception {
+	final CountDownLatch latch = new CountDownLatch(1);
+	try (AsyncEntityMatcher async = new AsyncEntityMatcher(matcher.getEntityManagerFactory(), 1, 1,
+		new ThreadPoolExecutor.DiscardPolicy())) {
+	    final CompletableFuture<Boolean> blocking = async.submit(m -> awaitQuietly(latch));
+	    final CompletableFuture<Boolean> queued = async.submit(m -> true);
+	    final CompletableFuture<Boolean> discarded = async.submit(m -> true);
+
+	    assertThat(discarded.isCompletedExceptionally(), is(true));
+	    latch.countDown();
+	    assertThat(blocking.get() && queued.get(), is(true));
+	}
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAsyncDiscardOldestRejected() {
+	new AsyncEntityMatcher(matcher.getEntityManagerFactory(), 1, 1, new ThreadPoolExecutor.DiscardOldestPolicy());
+    }
+
+    @Test
+    public void testQueryCoalescing() throws Exception {
+	final CountDownLatch latch = new CountDownLatch(1);
+	final ExecutorService callers = Executors.newFixedThreadPool(3);
+	final List<EntityMatcher> testees = new ArrayList<>();
+	try (AsyncEntityMatcher async = new AsyncEntityMatcher(matcher.getEntityManagerFactory(), 1, 1)) {
+	    final QueryCoalescer coalescer = new QueryCoalescer(async, 10, TimeUnit.SECONDS);
+	    final CompletableFuture<Boolean> blocking = async.submit(m -> awaitQuietly(latch));
+
+	    final List<CompletableFuture<List<TestOther>>> snakes = new ArrayList<>();
+	    for (int i = 0; i < 3; i++) {
+		final EntityMatcher testee = new EntityMatcher(matcher.getEntityManagerFactory().createEntityManager());
+		testee.setQueryCoalescer(coalescer);
+		testees.add(testee);
+		snakes.add(CompletableFuture.supplyAsync(
+			() -> testee.findAny(TestOther.class, matching("bar", eq("Snake"))), callers));
+	    }
+	    final long deadline = System.currentTimeMillis() + 5000;
+	    while (coalescer.getCoalescedCount() < 2) {
+		assertThat("callers didn't coalesce in time", System.currentTimeMillis() < deadline, is(true));
+		Thread.sleep(1);
+	    }
+	    latch.countDown();
+	    blocking.get();
+
+	    assertThat(snakes.get(0).get().isEmpty(), is(false));
+	    for (CompletableFuture<List<TestOther>> shared : snakes) {
+		assertThat(shared.get() == snakes.get(0).get(), is(true));
+	    }
+	    assertThat(testees.get(0).contains(snakes.get(0).get().get(0)), is(false));
+	    assertThat(coalescer.getExecutionCount(), is(1L));
+	    assertThat(coalescer.getInFlightCount(), is(0));
+	} finally {
+	    callers.shutdown();
+	    testees.forEach(EntityMatcher::close);
+	}
+    }
+
+    @Test
+    public void testQueryCoalescingFailures() throws Exception {
+	final CountDownLatch latch = new CountDownLatch(1);
+	final EntityMatcher testee = new EntityMatcher(matcher.getEntityManagerFactory().createEntityManager());
+	try (AsyncEntityMatcher async = new AsyncEntityMatcher(matcher.getEntityManagerFactory(), 1, 1)) {
+	    final QueryCoalescer coalescer = new QueryCoalescer(async, 50, TimeUnit.MILLISECONDS);
+	    testee.setQueryCoalescer(coalescer);
+	    async.submit(m -> awaitQuietly(latch));
+	    try {
+		testee.findAny(TestOther.class, matching("bar", eq("Snake")));
+		fail();
+	    } catch (QueryTimeoutException e) {
+	    }
+	    // nobody waits for the timed out execution anymore
+	    assertThat(coalescer.getInFlightCount(), is(0));
+
+	    // the timed out query still waits in the queue, so this one is rejected
+	    try {
+		testee.findAny(TestOther.class, matching("bar", eq("Hello")));
+		fail();
+	    } catch (RejectedExecutionException e) {
+	    }
+	    latch.countDown();
+	} finally {
+	    testee.close();
+	}
+    }
+
+    @Test
+    public void testBatchLoader() throws Exception {
+	try (BatchLoader<Integer, TestOther> loader = new BatchLoader<>(matcher.getEntityManagerFactory(),
+		TestOther.class, "foo", 10, 1, TimeUnit.MINUTES)) {
+	    final CompletableFuture<TestOther> one = loader.load(1);
+	    final CompletableFuture<TestOther> six = loader.load(6);
+	    final CompletableFuture<TestOther> missing = loader.load(42);
+	    assertThat(loader.load(1) == one, is(true));
+
+	    loader.dispatch();
+	    assertThat(one.get().getBar(), is("Snake"));
+	    assertThat(six.get().getBar(), is("Hello"));
+	    try {
+		missing.get();
+		fail();
+	    } catch (ExecutionException e) {
+		assertThat(e.getCause() instanceof NoResultException, is(true));
+	    }
+	    assertThat(loader.getBatchCount(), is(1L));
+	    assertThat(loader.getLoadCount(), is(4L));
+	}
+    }
+
+    @Test
+    public void testBatchLoaderLimits() throws Exception {
+	try (BatchLoader<Integer, TestOther> loader = new BatchLoader<>(matcher.getEntityManagerFactory(),
+		TestOther.class, "foo", 2, 10, TimeUnit.MILLISECONDS)) {
+	    final Map<Integer, CompletableFuture<TestOther>> testee = loader.loadAll(Arrays.asList(1, 2, 3));
+	    for (Map.Entry<Integer, CompletableFuture<TestOther>> entry : testee.entrySet()) {
+		assertThat(entry.getValue().get(10, TimeUnit.SECONDS).getFoo(), is(entry.getKey()));
+	    }
+	    // the first batch is full, the second one dispatched after the max wait
+	    assertThat(loader.getBatchCount(), is(2L));
+	}
+    }
+
+    @Test
+    public void testBatchLoaderFailure() throws Exception {
+	final IllegalStateException closed = new IllegalStateException("Closed factory.");
+	final EntityManagerFactory failing = (EntityManagerFactory) Proxy.newProxyInstance(
+		getClass().getClassLoader(), new Class<?>[] { EntityManagerFactory.class }, (proxy, method, args) -> {
+		    throw closed;
+		});
+	try (BatchLoader<Integer, TestOther> loader = new BatchLoader<>(failing, TestOther.class, "foo", 10, 1,
+		TimeUnit.MINUTES)) {
+	    final CompletableFuture<TestOther> one = loader.load(1);
+	    loader.dispatch();
+	    try {
+		one.get(10, TimeUnit.SECONDS);
+		fail();
+	    } catch (ExecutionException e) {
+		assertThat(e.getCause() == closed, is(true));
+	    }
+	}
+    }
+
+    @Test
+    public void testFindAllByIds() {
+	final EntityMatcher testee = new EntityMatcher(matcher.getEntityManagerFactory().createEntityManager());
+	try {
+	    final TestOther hello = testee.findUnique(TestOther.class, matching("foo", eq(6)));
+	    final TestOther snake = matcher.findUnique(TestOther.class, matching("foo", eq(1)));
+	    final Object helloId = id(hello);
+	    final Object snakeId = id(snake);
+
+	    final List<TestOther> found = testee.findAllByIds(TestOther.class, Arrays.asList(snakeId, -1L, helloId, snakeId));
+	    assertThat(found.size(), is(4));
+	    assertThat(found.get(0).getFoo(), is(1));
+	    assertThat(found.get(1), is(nullValue()));
+	    // served from the persistence context
+	    assertThat(found.get(2) == hello, is(true));
+	    assertThat(found.get(3) == found.get(0), is(true));
+
+	    final List<TestOther> chunked = testee.findAllByIds(TestOther.class, Arrays.asList(helloId, snakeId), 1);
+	    assertThat(chunked.stream().map(TestOther::getFoo).collect(Collectors.toList()), contains(6, 1));
+	} finally {
+	    testee.close();
+	}
+    }
+
+    @Test
+    public void testBulkUpdateAndDelete() {
+	final EntityMatcher testee = new EntityMatcher(matcher.getEntityManagerFactory().createEntityManager());
+	try {
+	    testee.getTransaction().begin();
+	    testee.persist(new TestOther(100, "Bulk"));
+	    testee.persist(new TestOther(101, "Bulk"));
+	    testee.getTransaction().commit();
+	    final TestOther managed = testee.findUnique(TestOther.class, matching("foo", eq(100)));
+
+	    assertThat(testee.update(TestOther.class).set("foo", plus(10)).where(matching("bar", eq("Bulk"))), is(2));
+	    // bulk statements bypass the persistence context
+	    assertThat(managed.getFoo(), is(100));
+
+	    assertThat(testee.update(TestOther.class).set("bar", "Bulked").evicting()
+		    .where(matching("bar", eq("Bulk"))), is(2));
+	    assertThat(testee.contains(managed), is(false));
+	    assertThat(testee.findAny(TestOther.class, matching("bar", eq("Bulked"))).stream().map(TestOther::getFoo)
+		    .collect(Collectors.toList()), containsInAnyOrder(110, 111));
+
+	    assertThat(testee.delete(TestOther.class).where(matching("bar", eq("Bulked"))), is(2));
+	    assertThat(testee.findAny(TestOther.class, matching("bar", eq("Bulked"))).isEmpty(), is(true));
+	} finally {
+	    testee.close();
+	}
+    }
+
+    @Test
+    public void testBulkUpdateRendering() {
+	assertThat(matcher.update(TestClass.class).set("bar", null).set("foo", minus(1))
+		.render(matching("foo", gt(2))).getText(),
+		is("UPDATE TestClass testclass SET testclass.bar = NULL, testclass.foo = testclass.foo - ?0 WHERE testclass.foo > ?1"));
+	try {
+	    matcher.delete(TestClass.class).render(matching("foo", TestOther.class));
+	    fail();
+	} catch (IllegalArgumentException e) {
+	    // jpql bulk statements can't join
+	}
+    }
+
+    @Test
+    public void testPersistAll() {
+	final EntityMatcher testee = new EntityMatcher(matcher.getEntityManagerFactory().createEntityManager());
+	try {
+	    final List<TestOther> entities = new ArrayList<>();
+	    for (int i = 0; i < 7; i++) {
+		entities.add(new TestOther(200 + i, "Batch"));
+	    }
+	    final BatchReport serial = testee.persistAll(entities, 3, 1);
+	    assertThat(serial.getCount(), is(7L));
+	    assertThat(serial.getBatches(), is(3L));
+
+	    final List<TestOther> others = new ArrayList<>();
+	    for (int i = 0; i < 10; i++) {
+		others.add(new TestOther(300 + i, "Batch"));
+	    }
+	    final BatchReport parallel = testee.mergeAll(others, 3, 2);
+	    assertThat(parallel.getCount(), is(10L));
+	    assertThat(parallel.getBatches(), is(4L));
+
+	    assertThat(testee.findAny(TestOther.class, matching("bar", eq("Batch"))).size(), is(17));
+	    testee.delete(TestOther.class).where(matching("bar", eq("Batch")));
+	} finally {
+	    testee.close();
+	}
+    }
+
+    @Test
+    public void testExists() {
+	assertThat(matcher.exists(TestOther.class, matching("bar", eq("Snake"))), is(true));
+	assertThat(matcher.exists(TestOther.class, matching("bar", eq("Frog"))), is(false));
+	assertThat(matcher.exists(TestClass.class, matching("foo", TestJoin.class).and("bar", eq("Bye"))), is(true));
+    }
+
+    @Test
+    public void testCountRows() {
+	assertThat(matcher.count(TestOther.class, matching("bar", eq("Snake"))), is(3L));
+	assertThat(matcher.count(TestOther.class, orderBy("foo")), is(4L));
+	try {
+	    matcher.count(TestOther.class, groupBy("bar"));
+	    fail();
+	} catch (IllegalArgumentException e) {
+	    // groups aren't rows
+	}
+    }
+
+    private static Object id(Object entity) {
+	return matcher.getEntityManagerFactory().getPersistenceUnitUtil().getIdentifier(entity);
+    }
+
+    private static boolean awaitQuietly(CountDownLatch latch) {
+	try {
+	    return latch.await(10, TimeUnit.SECONDS);
+	} catch (InterruptedException e) {
+	    return false;
+	}
+    }
+
     @Test
     public void tryMatchingSignatures() {
 
@@ -0,0 +1,196 @@
+/*******************************************************************************
+ * Copyright (c) 2018, Xavier Miret Andres <xavier.mires@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package org.matcher.replica;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.matcher.name.NameBasedExpressions.eq;
+import static org.matcher.name.NameBasedExpressions.matching;
+import static org.matcher.option.QueryOption.lockMode;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.LockModeType;
+import javax.persistence.Persistence;
+import javax.persistence.TransactionRequiredException;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.matcher.EntityMatcher;
+import org.matcher.TestOther;
+import org.matcher.replica.ReplicaSet.Selection;
+
+public class ReplicatedEntityMatcherTest {
+    static EntityManagerFactory primary;
+    static List<EntityManagerFactory> replicas;
+
+    @BeforeClass
+    public static void pre() {
+	primary = database("primary", new TestOther(1, "Primary"));
+	replicas = Arrays.asList(database("replica0", new TestOther(1, "Replica0")),
+		database("replica1", new TestOther(1, "Replica1")));
+    }
+
+    static EntityManagerFactory database(String name, Object... entities) {
+	final Map<String, Object> properties = new HashMap<>();
+	properties.put("hibernate.connection.url", "jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+	final EntityManagerFactory database = Persistence.createEntityManagerFactory("test", properties);
+
+	final EntityManager em = database.createEntityManager();
+	try {
+	    em.getTransaction().begin();
+	    for (Object entity : entities) {
+		em.persist(entity);
+	    }
+	    em.getTransaction().commit();
+	} finally {
+	    em.close();
+	}
+	return database;
+    }
+
+    @AfterClass
+    public static void post() {
+	primary.close();
+	for (EntityManagerFactory replica : replicas) {
+	    replica.close();
+	}
+    }
+
+    @Test
+    public void testRoundRobin() {
+	final ReplicaSet replicaSet = new ReplicaSet(replicas, Selection.ROUND_ROBIN);
+	final ReplicatedEntityMatcher testee = new ReplicatedEntityMatcher(primary.createEntityManager(), replicaSet);
+	try {
+	    assertThat(testee.findUnique(TestOther.class, matching("foo", eq(1))).getBar(), is("Replica0"));
+	    assertThat(testee.findAny(TestOther.class, matching("foo", eq(1))).get(0).getBar(), is("Replica1"));
+	    assertThat(testee.exists(TestOther.class, matching("bar", eq("Replica0"))), is(true));
+	    assertThat(testee.count(TestOther.class, matching("bar", eq("Replica0"))), is(0L));
+	    assertThat(replicaSet.getRoutedCount(0), is(2L));
+	    assertThat(replicaSet.getRoutedCount(1), is(2L));
+	    assertThat(replicaSet.getOutstandingCount(0), is(0));
+	} finally {
+	    testee.close();
+	}
+    }
+
+    @Test
+    public void testLeastOutstanding() {
+	final ReplicaSet replicaSet = new ReplicaSet(replicas, Selection.LEAST_OUTSTANDING);
+	final ReplicatedEntityMatcher testee = new ReplicatedEntityMatcher(primary.createEntityManager(), replicaSet);
+	try {
+	    replicaSet.started(0);
+	    for (int i = 0; i < 3; i++) {
+		assertThat(testee.findUnique(TestOther.class, matching("foo", eq(1))).getBar(), is("Replica1"));
+	    }
+	    replicaSet.finished(0);
+	    assertThat(replicaSet.getRoutedCount(1), is(3L));
+	} finally {
+	    testee.close();
+	}
+    }
+
+    @Test
+    public void testReplicaReadsDetached() {
+	final ReplicaSet replicaSet = new ReplicaSet(replicas.subList(0, 1), Selection.ROUND_ROBIN);
+	final ReplicatedEntityMatcher testee = new ReplicatedEntityMatcher(primary.createEntityManager(), replicaSet);
+	final EntityMatcher replica = new EntityMatcher(replicas.get(0).createEntityManager());
+	try {
+	    replica.getTransaction().begin();
+	    replica.persist(new TestOther(7, "Old"));
+	    replica.getTransaction().commit();
+
+	    final TestOther old = testee.findUnique(TestOther.class, matching("foo", eq(7)));
+	    assertThat(old.getBar(), is("Old"));
+	    assertThat(testee.getReplicaManager(0).contains(old), is(false));
+
+	    replica.update(TestOther.class).set("bar", "New").where(matching("foo", eq(7)));
+	    assertThat(testee.findUnique(TestOther.class, matching("foo", eq(7))).getBar(), is("New"));
+	} finally {
+	    replica.delete(TestOther.class).where(matching("foo", eq(7)));
+	    replica.close();
+	    testee.close();
+	}
+    }
+
+    @Test
+    public void testReplicaStreamDetached() {
+	final ReplicaSet replicaSet = new ReplicaSet(replicas.subList(0, 1), Selection.ROUND_ROBIN);
+	final ReplicatedEntityMatcher testee = new ReplicatedEntityMatcher(primary.createEntityManager(), replicaSet);
+	final EntityMatcher replica = new EntityMatcher(replicas.get(0).createEntityManager());
+	try {
+	    replica.getTransaction().begin();
+	    for (int i = 0; i < 3; i++) {
+		replica.persist(new TestOther(8, "Streamed"));
+	    }
+	    replica.getTransaction().commit();
+
+	    final List<TestOther> streamed;
+	    try (Stream<TestOther> stream = testee.findStream(TestOther.class, matching("foo", eq(8)), 2)) {
+		streamed = stream.collect(Collectors.toList());
+	    }
+	    assertThat(streamed.size(), is(3));
+	    for (TestOther entity : streamed) {
+		assertThat(testee.getReplicaManager(0).contains(entity), is(false));
+	    }
+	} finally {
+	    replica.delete(TestOther.class).where(matching("foo", eq(8)));
+	    replica.close();
+	    testee.close();
+	}
+    }
+
+    @Test
+    public void testPrimaryRouting() {
+	final ReplicaSet replicaSet = new ReplicaSet(replicas, Selection.ROUND_ROBIN);
+	final ReplicatedEntityMatcher testee = new ReplicatedEntityMatcher(primary.createEntityManager(), replicaSet);
+	try {
+	    // read your writes within the transaction
+	    testee.getTransaction().begin();
+	    testee.persist(new TestOther(2, "Written"));
+	    assertThat(testee.findUnique(TestOther.class, matching("bar", eq("Written"))).getFoo(), is(2));
+	    assertThat(testee.count(TestOther.class, matching("foo", eq(1))), is(1L));
+	    testee.getTransaction().commit();
+
+	    // the replicas don't replicate in this test
+	    assertThat(testee.exists(TestOther.class, matching("bar", eq("Written"))), is(false));
+	    try {
+		testee.findUnique(TestOther.class, matching("foo", eq(1)), lockMode(LockModeType.PESSIMISTIC_WRITE));
+		fail();
+	    } catch (TransactionRequiredException e) {
+		// locks are only taken on the primary, within a transaction
+	    }
+	    assertThat(replicaSet.getRoutedCount(0) + replicaSet.getRoutedCount(1), is(1L));
+	} finally {
+	    testee.close();
+	}
+    }
+}
@@ -0,0 +1,282 @@
+/*******************************************************************************
+ * Copyright (c) 2018, Xavier Miret Andres <xavier.mires@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package org.matcher.shard;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.matcher.name.NameBasedExpressions.avg;
+import static org.matcher.name.NameBasedExpressions.count;
+import static org.matcher.name.NameBasedExpressions.distinct;
+import static org.matcher.name.NameBasedExpressions.eq;
+import static org.matcher.name.NameBasedExpressions.groupBy;
+import static org.matcher.name.NameBasedExpressions.gt;
+import static org.matcher.name.NameBasedExpressions.in;
+import static org.matcher.name.NameBasedExpressions.matching;
+import static org.matcher.name.NameBasedExpressions.max;
+import static org.matcher.name.NameBasedExpressions.min;
+import static org.matcher.name.NameBasedExpressions.orderBy;
+import static org.matcher.name.NameBasedExpressions.selection;
+import static org.matcher.name.NameBasedExpressions.sum;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.NonUniqueResultException;
+import javax.persistence.Persistence;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.matcher.BoundQuery;
+import org.matcher.TestOther;
+import org.matcher.builder.OrderByBuilder;
+
+public class ShardedEntityMatcherTest {
+    static List<EntityManagerFactory> shards;
+    static ShardedEntityMatcher matcher;
+
+    @BeforeClass
+    public static void pre() {
+	shards = Arrays.asList( //
+		shard("shard0", new TestOther(6, "Hello"), new TestOther(3, "Snake"), new TestOther(9, "Frog")), //
+		shard("shard1", new TestOther(1, "Snake"), new TestOther(4, "Lizard")), //
+		shard("shard2", new TestOther(2, "Snake")));
+	matcher = new ShardedEntityMatcher(shards);
+    }
+
+    static class RecordingShardedEntityMatcher extends ShardedEntityMatcher {
+	final List<Map<EntityManagerFactory, BoundQuery>> executed = new ArrayList<>();
+
+	RecordingShardedEntityMatcher(List<EntityManagerFactory> shards) {
+	    super(shards);
+	    shardBy(TestOther.class, "foo", foo -> (Integer) foo % 3);
+	}
+
+	@Override
+	protected <T> List<List<T>> execute(Map<EntityManagerFactory, BoundQuery> queries, Class<T> returnType,
+		int maxResults) {
+	    executed.add(queries);
+	    return super.execute(queries, returnType, maxResults);
+	}
+
+	Map<EntityManagerFactory, BoundQuery> lastExecuted() {
+	    return executed.get(executed.size() - 1);
+	}
+    }
+
+    static EntityManagerFactory shard(String name, Object... entities) {
+	final Map<String, Object> properties = new HashMap<>();
+	properties.put("hibernate.connection.url", "jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+	final EntityManagerFactory shard = Persistence.createEntityManagerFactory("test", properties);
+
+	final EntityManager em = shard.createEntityManager();
+	try {
+	    em.getTransaction().begin();
+	    for (Object entity : entities) {
+		em.persist(entity);
+	    }
+	    em.getTransaction().commit();
+	} finally {
+	    em.close();
+	}
+	return shard;
+    }
+
+    @AfterClass
+    public static void post() {
+	for (EntityManagerFactory shard : shards) {
+	    shard.close();
+	}
+    }
+
+    @Test
+    public void testFindAny() {
+	final List<TestOther> testee = matcher.findAny(TestOther.class, matching("bar", eq("Snake")));
+	assertThat(testee.size(), is(3));
+    }
+
+    @Test
+    public void testOrderedMerge() {
+	final List<TestOther> testee = matcher.findAny(TestOther.class, orderBy("foo"));
+	assertThat(foos(testee), contains(1, 2, 3, 4, 6, 9));
+    }
+
+    @Test
+    public void testOrderedMergeLimit() {
+	final List<TestOther> testee = matcher.findAny(TestOther.class, matching("foo", gt(1)), orderBy("bar", "foo"), 4);
+	assertThat(foos(testee), contains(9, 6, 4, 2));
+    }
+
+    @Test
+    public void testOrderedMergeProjection() {
+	final List<String> testee = matcher.findAny(String.class, selection(TestOther.class, "bar"),
+		matching("foo", gt(1)), orderBy("bar"), 10);
+	assertThat(testee, contains("Frog", "Hello", "Lizard", "Snake", "Snake"));
+    }
+
+    @Test
+    public void testOrderedMergeNulls() {
+	final List<EntityManagerFactory> nullShards = Arrays.asList( //
+		shard("nulls0", new TestOther(1, "B"), new TestOther(2, null)), //
+		shard("nulls1", new TestOther(3, null), new TestOther(4, "A")));
+	try {
+	    final OrderByBuilder<?> ordering = orderBy("bar", "foo");
+	    final List<TestOther> testee = new ShardedEntityMatcher(nullShards).findAny(TestOther.class,
+		    matching("foo", gt(0)), ordering, 3);
+	    assertThat(foos(testee), contains(2, 3, 4));
+	    assertThat(ordering.isNullsFirst(), is(false));
+
+	    // rendered explicitly, databases differ on the default null ordering
+	    final String rendered = BoundQuery.of(selection(TestOther.class), orderBy("bar", "foo").nullsFirst())
+		    .getText();
+	    assertThat(rendered.endsWith("ORDER BY testother.bar NULLS FIRST, testother.foo NULLS FIRST"), is(true));
+	} finally {
+	    for (EntityManagerFactory shard : nullShards) {
+		shard.close();
+	    }
+	}
+    }
+
+    @Test
+    public void testFindUnique() {
+	assertThat(matcher.findUnique(TestOther.class, matching("bar", eq("Frog"))).getFoo(), is(9));
+    }
+
+    @Test(expected = NonUniqueResultException.class)
+    public void testFindUniqueAcrossShards() {
+	matcher.findUnique(TestOther.class, matching("bar", eq("Snake")));
+    }
+
+    @Test
+    public void testAggregates() {
+	final Object[] testee = matcher.findUnique(Object[].class, //
+		selection(count(TestOther.class, "foo")).and(sum("foo"), min("foo"), max("foo"), avg("foo")), //
+		matching("foo", gt(0)));
+	assertThat(testee[0], is(6L));
+	assertThat(testee[1], is(25L));
+	assertThat(testee[2], is(1));
+	assertThat(testee[3], is(9));
+	assertThat(testee[4], is(25d / 6));
+    }
+
+    @Test
+    public void testAggregatesSkipEmptyShards() {
+	// only shard0 holds frogs, the others return null partials
+	final Object[] testee = matcher.findUnique(Object[].class, //
+		selection(min(TestOther.class, "foo")).and(max("foo")), //
+		matching("bar", eq("Frog")));
+	assertThat(testee[0], is(9));
+	assertThat(testee[1], is(9));
+	assertThat(matcher.findUnique(Object.class, selection(max(TestOther.class, "foo")), matching("bar", eq("Frog"))),
+		is((Object) 9));
+    }
+
+    @Test
+    public void testGroupByMerged() {
+	final List<Object[]> testee = matcher.findAny(Object[].class, //
+		selection(TestOther.class, "bar").and(count("bar"), sum("foo"), avg("foo")), //
+		groupBy("bar"));
+	final Map<Object, List<Object>> groups = new HashMap<>();
+	for (Object[] group : testee) {
+	    groups.put(group[0], Arrays.asList(group).subList(1, group.length));
+	}
+	assertThat(groups.size(), is(4));
+	assertThat(groups.get("Snake"), contains((Object) 3L, 6L, 2d));
+	assertThat(groups.get("Frog"), contains((Object) 1L, 9L, 9d));
+    }
+
+    @Test
+    public void testGroupByIntegralKey() {
+	final List<Object[]> testee = matcher.findAny(Object[].class, //
+		selection(TestOther.class, "foo").and(count("foo")), //
+		groupBy("foo"));
+	assertThat(testee.size(), is(6));
+	for (Object[] group : testee) {
+	    assertThat(group[1], is(1L));
+	}
+    }
+
+    @Test
+    public void testDistinctMerged() {
+	final List<String> testee = matcher.findAny(String.class, selection(distinct(TestOther.class, "bar")),
+		matching("foo", gt(0)));
+	assertThat(testee, containsInAnyOrder("Hello", "Snake", "Frog", "Lizard"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testHavingNotMerged() {
+	matcher.findAny(String.class, selection(TestOther.class, "bar"), groupBy("bar").having(count("bar"), gt(1L)));
+    }
+
+    @Test
+    public void testPruneEq() {
+	final RecordingShardedEntityMatcher pruning = new RecordingShardedEntityMatcher(shards);
+	assertThat(pruning.findUnique(TestOther.class, matching("foo", eq(4))).getBar(), is("Lizard"));
+	assertThat(pruning.lastExecuted().keySet(), contains(shards.get(1)));
+    }
+
+    @Test
+    public void testPruneIn() {
+	final RecordingShardedEntityMatcher pruning = new RecordingShardedEntityMatcher(shards);
+	final List<TestOther> testee = pruning.findAny(TestOther.class, matching("foo", in(Arrays.asList(1, 3, 6))),
+		orderBy("foo"), 10);
+	assertThat(foos(testee), contains(1, 3, 6));
+
+	final Map<EntityManagerFactory, BoundQuery> executed = pruning.lastExecuted();
+	assertThat(executed.keySet(), contains(shards.get(0), shards.get(1)));
+	assertThat(executed.get(shards.get(0)).getBindings().getBindings(), contains((Object) Arrays.asList(3, 6)));
+	assertThat(executed.get(shards.get(1)).getBindings().getBindings(), contains((Object) Arrays.asList(1)));
+    }
+
+    @Test
+    public void testPruneAnd() {
+	final RecordingShardedEntityMatcher pruning = new RecordingShardedEntityMatcher(shards);
+	final List<TestOther> testee = pruning.findAny(TestOther.class, matching("bar", eq("Snake")).and("foo", eq(2)));
+	assertThat(foos(testee), contains(2));
+	assertThat(pruning.lastExecuted().keySet(), contains(shards.get(2)));
+    }
+
+    @Test
+    public void testPruneOr() {
+	final RecordingShardedEntityMatcher pruning = new RecordingShardedEntityMatcher(shards);
+	pruning.findAny(TestOther.class, matching("foo", eq(4)).or("foo", eq(6)));
+	assertThat(pruning.lastExecuted().keySet(), contains(shards.get(0), shards.get(1)));
+
+	pruning.findAny(TestOther.class, matching("foo", eq(4)).or("bar", eq("Frog")));
+	assertThat(pruning.lastExecuted().size(), is(3));
+    }
+
+    static List<Integer> foos(List<TestOther> tos) {
+	final List<Integer> foos = new ArrayList<>();
+	for (TestOther to : tos) {
+	    foos.add(to.getFoo());
+	}
+	return foos;
+    }
+}